@@ -14,18 +14,27 @@
  * the License.
  */
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 import common.ApplicationDefines;
 import common.PanelBase;
 import editor.EditorPanel;
+import editor.LevelIndex;
 import editor.LevelStorage;
 import game.Game;
 import game.GamePanel;
+import game.LevelPrefetcher;
 import localization.L10n;
 import menu.LevelMenuPanel;
 import menu.MainMenuPanel;
 import utils.ImageStorage;
+import utils.StartupProfiler;
 
 /**
  * The {@Application} class is main class of Application. It: 1. contains
@@ -38,10 +47,39 @@ import utils.ImageStorage;
 public class Application extends JFrame
         implements MainMenuPanel.Callback, LevelMenuPanel.Callback, GamePanel.Callback, EditorPanel.Callback {
     public static void main(String[] args) {
-        ApplicationDefines.init();
+        for (String arg : args) {
+            if (arg.equals("--passive-rendering")) {
+                ApplicationDefines.activeRendering = false;
+            } else if (arg.equals("--profile-startup")) {
+                StartupProfiler.start();
+            }
+        }
 
+        // Independent resources are loaded in parallel, only the font is required
+        // to create the user interface
+        final ExecutorService warmUpExecutor = Executors.newFixedThreadPool(WARM_UP_THREAD_COUNT, runnable -> {
+            Thread thread = new Thread(runnable, "WarmUp");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Future<?> fontLoading = warmUpExecutor
+                .submit(() -> runStartupPhase("Font loading", () -> ApplicationDefines.init()));
+        warmUpExecutor.submit(() -> runStartupPhase("Image decoding", () -> ImageStorage.preloadAll()));
+        LevelIndex.buildPredefined(task -> warmUpExecutor.execute(() -> runStartupPhase("Level index", task)));
+        warmUpExecutor.shutdown();
+
+        final long fontWaitStart = StartupProfiler.now();
+        try {
+            fontLoading.get();
+        } catch (InterruptedException | ExecutionException exception) {
+            exception.printStackTrace();
+        }
+        StartupProfiler.record("Waiting for the font", fontWaitStart);
+
+        final long userInterfaceStart = StartupProfiler.now();
         Application app = new Application();
         app.setVisible(true);
+        StartupProfiler.record("User interface (Swing classes and frame)", userInterfaceStart);
     }
 
     public Application() {
@@ -60,8 +98,11 @@ public class Application extends JFrame
     // MainMenuPanel.Callback
     @Override
     public void onMainMenuCommandPlay(boolean continueClosedGame) {
-        Game gameToLoad = continueClosedGame ? closedGame : LevelStorage.loadPredefined(currentPredefinedLevelIndex);
-        setPanel(new GamePanel(gameToLoad, this));
+        if (continueClosedGame) {
+            setPanel(new GamePanel(closedGame, this));
+        } else {
+            playPredefined(currentPredefinedLevelIndex);
+        }
     }
 
     @Override
@@ -73,7 +114,7 @@ public class Application extends JFrame
     public void onMainMenuCommandLoadFromFile() {
         Game game = LevelStorage.loadFromFile(this);
         if (game != null) {
-            setPanel(new GamePanel(game, this));
+            playGame(game);
         }
     }
 
@@ -90,11 +131,7 @@ public class Application extends JFrame
     // LevelMenuPanel.Callback
     @Override
     public void onLevelMenuCommandLevel(int index) {
-        Game game = LevelStorage.loadPredefined(index);
-        if (game != null) {
-            currentPredefinedLevelIndex = index;
-            setPanel(new GamePanel(game, this));
-        } else {
+        if (!playPredefined(index)) {
             onLevelMenuCommandExit();
         }
     }
@@ -112,7 +149,8 @@ public class Application extends JFrame
     }
 
     @Override
-    public void onGamePanelCommandExitOnVictory() {
+    public void onGamePanelCommandExitOnVictory(Game wonGame) {
+        LevelStorage.onLevelSolved(wonGame.getLevelHash(), wonGame.getStepCount());
         currentPredefinedLevelIndex = Math.min(currentPredefinedLevelIndex + 1, LevelStorage.predefinedLevelCount());
         closedGame = null;
         setPanel(new MainMenuPanel(this, false));
@@ -121,13 +159,63 @@ public class Application extends JFrame
     private PanelBase currentPanel = null;
     private int currentPredefinedLevelIndex = 1;
     private Game closedGame = null;
+    private final LevelPrefetcher prefetcher = new LevelPrefetcher();
+    // Font, images and level index. With fewer cores the tasks run in this order,
+    // so the font (the only one required for the first frame) isn't slowed down
+    private static final int WARM_UP_THREAD_COUNT = Math.min(3, Runtime.getRuntime().availableProcessors());
     private static final long serialVersionUID = 1L;
 
+    private static void runStartupPhase(String phaseName, Runnable phase) {
+        final long start = StartupProfiler.now();
+        phase.run();
+        StartupProfiler.record(phaseName, start);
+    }
+
+    // Starts the predefined level, the prefetched one is used if it has been
+    // prepared. Returns false if there is no such level
+    private boolean playPredefined(int index) {
+        final LevelPrefetcher.PreparedLevel preparedLevel = prefetcher.take(index);
+        if (preparedLevel != null) {
+            setPanel(new GamePanel(preparedLevel.getGame(), preparedLevel.getChunkCache(), this));
+        } else {
+            final Game game = LevelStorage.loadPredefined(index);
+            if (game == null) {
+                return false;
+            }
+            playGame(game);
+        }
+        currentPredefinedLevelIndex = index;
+        prefetchNextLevel();
+        return true;
+    }
+
+    // The next level of the campaign is prepared while the current one is played
+    private void prefetchNextLevel() {
+        final int nextIndex = currentPredefinedLevelIndex + 1;
+        if (nextIndex > LevelStorage.predefinedLevelCount()) {
+            return;
+        }
+        // The panel is laid out after it has been added, so its area is known later
+        SwingUtilities.invokeLater(() -> {
+            if (currentPanel instanceof GamePanel) {
+                final GamePanel gamePanel = (GamePanel) currentPanel;
+                prefetcher.prefetch(nextIndex, () -> LevelStorage.loadPredefined(nextIndex),
+                        gamePanel.getAvailableArea(), gamePanel.getGraphicsConfiguration());
+            }
+        });
+    }
+
+    // Starts a new game (a closed game is continued without it)
+    private void playGame(Game game) {
+        setPanel(new GamePanel(game, this));
+    }
+
     private void setPanel(PanelBase panel) {
         if (currentPanel != null) {
             removeKeyListener(currentPanel.keyListener());
             removeMouseListener(currentPanel.mouseListener());
             removeMouseMotionListener(currentPanel.mouseMotionListener());
+            removeMouseWheelListener(currentPanel.mouseWheelListener());
             remove(currentPanel);
         }
         currentPanel = panel;
@@ -135,6 +223,7 @@ public class Application extends JFrame
         addKeyListener(currentPanel.keyListener());
         addMouseListener(currentPanel.mouseListener());
         addMouseMotionListener(currentPanel.mouseMotionListener());
+        addMouseWheelListener(currentPanel.mouseWheelListener());
         add(currentPanel);
         currentPanel.revalidate();
         currentPanel.repaint();
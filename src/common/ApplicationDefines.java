@@ -34,6 +34,10 @@ public class ApplicationDefines {
 	static public final float FONT_SIZE = 20f;
 	static public Font font = null;
 	static public final Dimension DEFAULT_FRAME_SIZE = new Dimension(800, 800);
+	// Game panel is painted by its own render loop (see game.RenderLoop) instead
+	// of waiting for Swing to repaint it
+	static public boolean activeRendering = true;
+	static public final int TARGET_FPS = 60;
 
 	static public void init() {
 		try {
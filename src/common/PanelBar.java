@@ -17,16 +17,21 @@
 package common;
 
 import java.awt.Graphics;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import common.controls.ControlBase;
 import common.controls.SpaceControl;
 
 /**
- * The {@PanelBar} is base class for subpanel in {@PanelBase}
+ * The {@PanelBar} is base class for subpanel in {@PanelBase}. The layout is
+ * kept until controls are added or the rectangle of the bar is changed, a
+ * control under a point is found by binary search over the laid out controls.
  * 
  * @author olegshchepilov
  *
@@ -47,6 +52,7 @@ public class PanelBar {
         } else {
             rightOrBottomControls.add(0, control);
         }
+        invalidateLayout();
     }
 
     public void addSpacer(boolean leftOrTop, int size) {
@@ -57,22 +63,37 @@ public class PanelBar {
         addControl(new SpaceControl(), leftOrTop);
     }
 
+    // Makes the next updatePostition() lay out the controls even if the rectangle
+    // is the same (e.g. an ideal size of a control has been changed)
+    public void invalidateLayout() {
+        controls = null;
+        orderedControls = null;
+        layoutRect = null;
+        hitTestPlaces = null;
+        hitTestOrder = null;
+    }
+
     public void updatePostition(Rectangle rect) {
+        if (rect.equals(layoutRect)) {
+            return;
+        }
+        layoutRect = (Rectangle) rect.clone();
+        updateControlLists();
         Rectangle workRect = (Rectangle) rect.clone();
-        HashMap<ControlBase, Rectangle> controlsPlaces = new HashMap<ControlBase, Rectangle>();
-        ArrayList<ControlBase> orderedControls = new ArrayList<ControlBase>();
+        // Places of controls in the order they are shown
+        final Rectangle[] places = new Rectangle[orderedControls.size()];
         int stretchableSpacerCount = 0;
 
-        // 1. Locating fix-size controls
-        for (ControlBase control : leftOrTopControls) {
-            locateInitially(control, controlsPlaces, workRect, true);
-            orderedControls.add(control);
+        // 1. Locating fix-size controls (the right or bottom ones from the edge)
+        final int leftOrTopCount = leftOrTopControls.size();
+        for (int i = 0; i < leftOrTopCount; ++i) {
+            final ControlBase control = leftOrTopControls.get(i);
+            places[i] = locateInitially(control, workRect, true);
             stretchableSpacerCount += (isStretchableSpacer(control) ? 1 : 0);
         }
-        final int insertPos = orderedControls.size();
-        for (ControlBase control : rightOrBottomControls) {
-            locateInitially(control, controlsPlaces, workRect, false);
-            orderedControls.add(insertPos, control);
+        for (int i = 0; i < rightOrBottomControls.size(); ++i) {
+            final ControlBase control = rightOrBottomControls.get(i);
+            places[places.length - 1 - i] = locateInitially(control, workRect, false);
             stretchableSpacerCount += (isStretchableSpacer(control) ? 1 : 0);
         }
 
@@ -81,34 +102,106 @@ public class PanelBar {
             final int freeSpaceSize = horizontal ? workRect.width : workRect.height;
             final int stretchableSpacerSize = freeSpaceSize / stretchableSpacerCount;
             int offset = 0;
-            for (ControlBase control : orderedControls) {
-                offset = correctPosBecauseOfStretch(controlsPlaces, control, stretchableSpacerSize, offset);
+            for (int i = 0; i < places.length; ++i) {
+                offset = correctPosBecauseOfStretch(places[i], orderedControls.get(i), stretchableSpacerSize, offset);
             }
         }
 
         // 3. Applying the result
-        List<ControlBase> allControls = getControls();
-        for (ControlBase control : allControls) {
-            control.setPosition(controlsPlaces.get(control));
+        for (int i = 0; i < places.length; ++i) {
+            orderedControls.get(i).setPosition(places[i]);
         }
+        updateHitTest(places);
     }
 
+    // Returns unmodifiable list of all controls: the left or top ones followed by
+    // the right or bottom ones (from the right or bottom edge)
     public List<ControlBase> getControls() {
-        List<ControlBase> allControls = new ArrayList<ControlBase>(rightOrBottomControls);
-        allControls.addAll(0, leftOrTopControls);
-        return allControls;
+        updateControlLists();
+        return controls;
+    }
+
+    // Returns the control that contains the point or null. If some controls
+    // contain it, the first one of getControls() is returned
+    public ControlBase getControlAt(Point point) {
+        if (hitTestOrder == null || point == null) {
+            return null;
+        }
+        final int coordinate = horizontal ? point.x : point.y;
+        // Controls that start after the point can't contain it
+        int low = 0;
+        int high = hitTestOrder.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (hitTestStarts[middle] <= coordinate) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        // Earlier controls are checked while any of them reaches the point
+        int foundIndex = Integer.MAX_VALUE;
+        for (int i = low - 1; i >= 0 && hitTestMaxEnds[i] > coordinate; --i) {
+            final int index = hitTestOrder[i];
+            if (index < foundIndex && hitTestPlaces[index].contains(point)) {
+                foundIndex = index;
+            }
+        }
+        return (foundIndex == Integer.MAX_VALUE) ? null : controls.get(foundIndex);
     }
 
     public void paint(Graphics graphics) {
-        List<ControlBase> sidebarControls = getControls();
-        for (ControlBase control : sidebarControls) {
+        for (ControlBase control : getControls()) {
             control.paint(graphics);
         }
     }
 
-    private void locateInitially(ControlBase control, HashMap<ControlBase, Rectangle> controlsPlaces,
-            Rectangle workRect, boolean leftOrTop) {
+    private void updateControlLists() {
+        if (controls != null) {
+            return;
+        }
+        List<ControlBase> allControls = new ArrayList<ControlBase>(leftOrTopControls);
+        allControls.addAll(rightOrBottomControls);
+        controls = Collections.unmodifiableList(allControls);
+        // The right or bottom controls are shown in the order they have been added
+        List<ControlBase> shownControls = new ArrayList<ControlBase>(leftOrTopControls);
+        for (int i = rightOrBottomControls.size() - 1; i >= 0; --i) {
+            shownControls.add(rightOrBottomControls.get(i));
+        }
+        orderedControls = shownControls;
+    }
+
+    // Sorts the controls by their start along the bar. Ends are accumulated, so
+    // the search knows when no earlier control can reach a point
+    private void updateHitTest(Rectangle[] places) {
+        final int count = controls.size();
+        final int[] starts = new int[count];
+        final int[] ends = new int[count];
+        final Integer[] order = new Integer[count];
+        hitTestPlaces = new Rectangle[count];
+        for (int i = 0; i < count; ++i) {
+            // Index in getControls() of the shown control
+            final int index = (i < leftOrTopControls.size()) ? i : count - 1 - (i - leftOrTopControls.size());
+            final Rectangle place = places[i];
+            hitTestPlaces[index] = place;
+            starts[index] = horizontal ? place.x : place.y;
+            ends[index] = starts[index] + (horizontal ? place.width : place.height);
+            order[i] = index;
+        }
+        Arrays.sort(order, Comparator.comparingInt(index -> starts[index]));
+        hitTestOrder = new int[count];
+        hitTestStarts = new int[count];
+        hitTestMaxEnds = new int[count];
+        int maxEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < count; ++i) {
+            hitTestOrder[i] = order[i];
+            hitTestStarts[i] = starts[order[i]];
+            maxEnd = Math.max(maxEnd, ends[order[i]]);
+            hitTestMaxEnds[i] = maxEnd;
+        }
+    }
 
+    private Rectangle locateInitially(ControlBase control, Rectangle workRect, boolean leftOrTop) {
         final int controlWidth = control.getIdealWidth();
         final int controlHeight = control.getIdealHeight();
         Rectangle controlRect = (Rectangle) workRect.clone();
@@ -139,12 +232,10 @@ public class PanelBar {
                 controlRect.width = controlWidth;
             }
         }
-        controlsPlaces.put(control, controlRect);
+        return controlRect;
     }
 
-    private int correctPosBecauseOfStretch(HashMap<ControlBase, Rectangle> controlsPlaces, ControlBase control,
-            int freeSpaceSize, int offset) {
-        Rectangle rect = controlsPlaces.get(control);
+    private int correctPosBecauseOfStretch(Rectangle rect, ControlBase control, int freeSpaceSize, int offset) {
         if (horizontal) {
             rect.x += offset;
         } else {
@@ -165,4 +256,16 @@ public class PanelBar {
     private boolean horizontal = false;
     private List<ControlBase> leftOrTopControls = new ArrayList<ControlBase>();
     private List<ControlBase> rightOrBottomControls = new ArrayList<ControlBase>();
+    // Cached lists (null until the controls are changed)
+    private List<ControlBase> controls = null;
+    private List<ControlBase> orderedControls = null;
+    // Rectangle of the last layout (null if the controls haven't been laid out)
+    private Rectangle layoutRect = null;
+    // Places of controls (by index in getControls()), indexes of the controls
+    // sorted by start along the bar, their starts and the maximal end of the
+    // controls up to the index
+    private Rectangle[] hitTestPlaces = null;
+    private int[] hitTestOrder = null;
+    private int[] hitTestStarts = null;
+    private int[] hitTestMaxEnds = null;
 }
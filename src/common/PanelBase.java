@@ -23,11 +23,14 @@ import java.awt.event.ComponentListener;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelListener;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.JPanel;
 
+import utils.StartupProfiler;
+
 /**
  * The {@PanelBase} is base class for panels used in the application.
  * 
@@ -73,6 +76,13 @@ public class PanelBase extends JPanel {
         }
     }
 
+    // The whole panel (including painting of inheritors) has been painted here
+    @Override
+    public void paint(Graphics graphics) {
+        super.paint(graphics);
+        StartupProfiler.onFirstPaint();
+    }
+
     // If a child class wants to process key events, it has to return non-null
     // object
     public KeyListener keyListener() {
@@ -91,6 +101,12 @@ public class PanelBase extends JPanel {
         return null;
     }
 
+    // If a child class wants to process mouse wheel, it has to return non-null
+    // object
+    public MouseWheelListener mouseWheelListener() {
+        return null;
+    }
+
     // Calls when the component has been resized
     public void onResize() {
         updateBarPositions();
@@ -39,6 +39,10 @@ public class ButtonControl extends ControlBase {
         handCursor = true;
     }
 
+    public void setText(String text) {
+        label.setText(text);
+    }
+
     @Override
     public int getIdealHeight() {
         return middleImage.getHeight(null);
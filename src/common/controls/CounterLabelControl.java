@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package common.controls;
+
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+
+import utils.FontUtils;
+
+/**
+ * The {@CounterLabelControl} is class for painting a number that is changed
+ * often (e.g. count of steps). Digits are laid out once for the font, a new
+ * value is drawn from them without formatting or laying out text.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class CounterLabelControl extends ControlBase {
+    final public static String TYPE = "CounterLabel";
+
+    public CounterLabelControl(int value, int fixWidth) {
+        super(TYPE, "");
+        setValue(value);
+        this.fixWidth = fixWidth;
+    }
+
+    public void setValue(int newValue) {
+        value = newValue;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public int getIdealHeight() {
+        return 20;
+    }
+
+    @Override
+    public int getIdealWidth() {
+        return fixWidth;
+    }
+
+    @Override
+    public void paint(Graphics graphics) {
+        if (position == null || graphics == null) {
+            return;
+        }
+        Graphics2D graphics2d = (Graphics2D) graphics;
+        updateGlyphs(graphics2d.getFont(), graphics2d.getFontRenderContext());
+
+        // Digits from the lowest one (the minus sign has index 10)
+        int digitCount = 0;
+        long rest = Math.abs((long) value);
+        do {
+            digits[digitCount++] = (int) (rest % 10);
+            rest /= 10;
+        } while (rest > 0);
+        if (value < 0) {
+            digits[digitCount++] = MINUS_INDEX;
+        }
+
+        final int y = position.y + position.height - (position.height - FontUtils.getFontHeight(font)) / 2;
+        float x = position.x;
+        for (int i = digitCount - 1; i >= 0; --i) {
+            graphics2d.drawGlyphVector(glyphs[digits[i]], x, y);
+            x += advances[digits[i]];
+        }
+    }
+
+    // Lays out the digits again if the font or the context has been changed
+    private void updateGlyphs(Font newFont, FontRenderContext newContext) {
+        if (newFont.equals(font) && newContext.equals(context)) {
+            return;
+        }
+        font = newFont;
+        context = newContext;
+        for (int i = 0; i < SYMBOLS.length; ++i) {
+            glyphs[i] = FontUtils.getGlyphVector(font, SYMBOLS[i], context);
+            advances[i] = (float) glyphs[i].getLogicalBounds().getWidth();
+        }
+    }
+
+    private static final String[] SYMBOLS = { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "-" };
+    private static final int MINUS_INDEX = 10;
+    private int value = 0;
+    private final int fixWidth;
+    private Font font = null;
+    private FontRenderContext context = null;
+    private final GlyphVector[] glyphs = new GlyphVector[SYMBOLS.length];
+    private final float[] advances = new float[SYMBOLS.length];
+    // Enough for any int with a sign
+    private final int[] digits = new int[11];
+}
@@ -17,8 +17,9 @@
 package common.controls;
 
 import java.awt.Font;
-import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.font.GlyphVector;
 import java.util.Objects;
 
 import common.ApplicationDefines;
@@ -93,16 +94,22 @@ public class LabelControl extends ControlBase {
         if (position == null || graphics == null) {
             return;
         }
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        // The text is laid out once for the font of the graphics
+        Graphics2D graphics2d = (Graphics2D) graphics;
+        final Font font = graphics2d.getFont();
+        final GlyphVector glyphVector = FontUtils.getGlyphVector(font, text, graphics2d.getFontRenderContext());
         int y = position.y + position.height;
-        FontMetrics metrics = graphics.getFontMetrics();
-        final int fontHeight = FontUtils.getFontHeight(graphics.getFont());
+        final int fontHeight = FontUtils.getFontHeight(font);
         y -= (position.height - fontHeight) / 2;
         int x = position.x;
         if (alignment == Alignment.CENTER) {
-            final int width = metrics.stringWidth(text);
+            final int width = (int) glyphVector.getLogicalBounds().getWidth();
             x += (position.width - width) / 2;
         }
-        graphics.drawString(text, x, y);
+        graphics2d.drawGlyphVector(glyphVector, x, y);
     }
 
     private String text = null;
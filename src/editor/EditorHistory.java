@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package editor;
+
+import java.awt.Point;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import game.Cell;
+
+/**
+ * The {@EditorHistory} is a journal of changes made in the editor. A change of
+ * a cell is stored as one long value (coordinates of the cell and its states
+ * before and after the change). Changes made by one user action (e.g. a drag
+ * stroke) are grouped into a batch that is undone and redone at once.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class EditorHistory {
+    // Changes of one user action in the order they have been made
+    public static final class Batch {
+        public int size() {
+            return count;
+        }
+
+        public Point getCell(int index) {
+            final long edit = edits[index];
+            return new Point((int) (edit >>> 48), (int) ((edit >>> 32) & 0xFFFF));
+        }
+
+        public int getStateBefore(int index) {
+            return (int) ((edits[index] >>> 8) & 0xFF);
+        }
+
+        public int getStateAfter(int index) {
+            return (int) (edits[index] & 0xFF);
+        }
+
+        private void add(int x, int y, int before, int after) {
+            if (count == edits.length) {
+                edits = Arrays.copyOf(edits, 2 * edits.length);
+            }
+            edits[count++] = ((long) x << 48) | ((long) y << 32) | (before << 8) | after;
+        }
+
+        private long[] edits = new long[16];
+        private int count = 0;
+    }
+
+    // Count of different packed states
+    public static final int STATE_COUNT = 0x20;
+
+    // Packs state of a cell into bits: type code, box, target point and mole
+    public static int packState(Cell.Type type, boolean box, boolean targetPoint, boolean mole) {
+        return type.getCode() | (box ? BOX_BIT : 0) | (targetPoint ? TARGET_POINT_BIT : 0) | (mole ? MOLE_BIT : 0);
+    }
+
+    public static Cell.Type getType(int state) {
+        return Cell.Type.fromCode((byte) (state & TYPE_MASK));
+    }
+
+    public static boolean hasBox(int state) {
+        return (state & BOX_BIT) != 0;
+    }
+
+    public static boolean hasTargetPoint(int state) {
+        return (state & TARGET_POINT_BIT) != 0;
+    }
+
+    public static boolean hasMole(int state) {
+        return (state & MOLE_BIT) != 0;
+    }
+
+    public static int withoutMole(int state) {
+        return state & ~MOLE_BIT;
+    }
+
+    // Starts a batch, all changes are added to it until endBatch() is called
+    public void beginBatch() {
+        endBatch();
+        currentBatch = new Batch();
+    }
+
+    // Puts the current batch (if it isn't empty) into the history
+    public void endBatch() {
+        if (currentBatch == null) {
+            return;
+        }
+        if (currentBatch.size() > 0) {
+            undoBatches.push(currentBatch);
+            if (undoBatches.size() > MAX_BATCH_COUNT) {
+                undoBatches.removeLast();
+            }
+            redoBatches.clear();
+        }
+        currentBatch = null;
+    }
+
+    // Records change of the cell. A change outside of a batch is a batch itself
+    public void record(Point cell, int before, int after) {
+        final boolean isSingleChange = (currentBatch == null);
+        if (isSingleChange) {
+            beginBatch();
+        }
+        currentBatch.add(cell.x, cell.y, before, after);
+        if (isSingleChange) {
+            endBatch();
+        }
+    }
+
+    public boolean canUndo() {
+        return !undoBatches.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoBatches.isEmpty();
+    }
+
+    // Returns batch which changes have to be reverted (from the last to the first)
+    // or null if there is nothing to undo
+    public Batch undo() {
+        endBatch();
+        if (undoBatches.isEmpty()) {
+            return null;
+        }
+        final Batch batch = undoBatches.pop();
+        redoBatches.push(batch);
+        return batch;
+    }
+
+    // Returns batch which changes have to be applied again or null if there is
+    // nothing to redo
+    public Batch redo() {
+        endBatch();
+        if (redoBatches.isEmpty()) {
+            return null;
+        }
+        final Batch batch = redoBatches.pop();
+        undoBatches.push(batch);
+        return batch;
+    }
+
+    public void clear() {
+        currentBatch = null;
+        undoBatches.clear();
+        redoBatches.clear();
+    }
+
+    private Batch currentBatch = null;
+    private final ArrayDeque<Batch> undoBatches = new ArrayDeque<Batch>();
+    private final ArrayDeque<Batch> redoBatches = new ArrayDeque<Batch>();
+    private static final int MAX_BATCH_COUNT = 200;
+    private static final int TYPE_MASK = 0x03;
+    private static final int BOX_BIT = 0x04;
+    private static final int TARGET_POINT_BIT = 0x08;
+    private static final int MOLE_BIT = 0x10;
+}
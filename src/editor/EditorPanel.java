@@ -22,16 +22,24 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.Stroke;
+import java.awt.Transparency;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import javax.swing.Timer;
+
+import common.ApplicationDefines;
 import common.PanelBar;
 import common.controls.ButtonControl;
 import common.controls.ControlBase;
@@ -39,12 +47,15 @@ import common.controls.ImageControl;
 import common.controls.LabelControl;
 import common.controls.NumericLeftRightControl;
 import game.Cell;
+import game.ChunkCache;
 import game.Game;
 import game.GamePanelBase;
+import game.LevelAnalyzer;
 import localization.L10n;
 import utils.Margins;
 import utils.PanelUtils;
 import utils.RectangleUtils;
+import utils.SystemUtils;
 
 /**
  * The {@EditorPanel} is a panel that is responsible editing game board
@@ -53,8 +64,8 @@ import utils.RectangleUtils;
  *
  */
 
-public class EditorPanel extends GamePanelBase
-        implements MouseListener, MouseMotionListener, NumericLeftRightControl.Callback, ControlBase.ClickListener {
+public class EditorPanel extends GamePanelBase implements KeyListener, MouseListener, MouseMotionListener,
+        NumericLeftRightControl.Callback, ControlBase.ClickListener, SolvabilityChecker.Listener {
     public interface Callback {
         public void onEditorPanelCommandExit(Game game);
     }
@@ -68,6 +79,31 @@ public class EditorPanel extends GamePanelBase
         getGame().setFieldSize(new Dimension(DEFAULT_FIELD_WIDTH, DEFAULT_FIELD_HEIGHT));
 
         initControls();
+
+        // Edited cells are collected and repainted once per frame
+        repaintTimer = new Timer(1000 / ApplicationDefines.TARGET_FPS, e -> flushDirtyRegion());
+        repaintTimer.setRepeats(false);
+
+        solvabilityChecker = new SolvabilityChecker(getGame(), this);
+    }
+
+    // The level is checked again every time the panel is shown, the analysis of
+    // the hidden panel has been stopped
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        solvabilityChecker.onLevelChanged();
+    }
+
+    @Override
+    public void removeNotify() {
+        solvabilityChecker.stop();
+        super.removeNotify();
+    }
+
+    @Override
+    public KeyListener keyListener() {
+        return this;
     }
 
     @Override
@@ -86,11 +122,23 @@ public class EditorPanel extends GamePanelBase
 
     @Override
     public void mousePressed(MouseEvent e) {
+        // All cells changed by one stroke are undone at once
+        history.beginBatch();
         processClick(e);
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
+        if (shapeStart != null) {
+            final Rectangle shapeBounds = calcShapeBounds();
+            final int[] indexes = (tool == Tool.RECTANGLE) ? calcRectangleCells(shapeStart, shapeEnd)
+                    : calcLineCells(shapeStart, shapeEnd);
+            shapeStart = null;
+            shapeEnd = null;
+            applyToCells(indexes, shapeFieldType);
+            addDirtyCells(shapeBounds);
+        }
+        history.endBatch();
     }
 
     @Override
@@ -103,7 +151,17 @@ public class EditorPanel extends GamePanelBase
 
     @Override
     public void mouseDragged(MouseEvent e) {
-        processClick(e);
+        if (shapeStart != null) {
+            final Point coordinates = findCellUnderPoint(PanelUtils.getRelativePoint(e, this));
+            if (coordinates != null && !coordinates.equals(shapeEnd)) {
+                // Both the previous and the new preview have to be repainted
+                addDirtyCells(calcShapeBounds());
+                shapeEnd = coordinates;
+                addDirtyCells(calcShapeBounds());
+            }
+        } else if (tool == Tool.PEN) {
+            processClick(e);
+        }
     }
 
     @Override
@@ -119,6 +177,52 @@ public class EditorPanel extends GamePanelBase
         }
     }
 
+    @Override
+    public void keyTyped(KeyEvent e) {
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        // Command on macOS, Ctrl on other platforms (as in the game)
+        if (SystemUtils.getOSFamily() == SystemUtils.OSFamily.MACOS) {
+            if (e.getKeyCode() == KeyEvent.VK_Z && e.isMetaDown()) {
+                if (e.isShiftDown()) {
+                    redo();
+                } else {
+                    undo();
+                }
+            }
+            return;
+        }
+        if (!e.isControlDown()) {
+            return;
+        }
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_Z:
+                if (e.isShiftDown()) {
+                    redo();
+                } else {
+                    undo();
+                }
+                break;
+            case KeyEvent.VK_Y:
+                redo();
+                break;
+        }
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+    }
+
+    @Override
+    public void onGameSizeChanged() {
+        // Cells of the history may be outside of the resized field
+        history.clear();
+        onLevelEdited();
+        super.onGameSizeChanged();
+    }
+
     @Override
     public void paintComponent(Graphics graphics) {
         super.paintComponent(graphics);
@@ -126,6 +230,7 @@ public class EditorPanel extends GamePanelBase
         if (getGame() != null) {
             drawField(graphics);
             drawFieldGrid(graphics);
+            drawShapePreview(graphics);
         }
     }
 
@@ -141,6 +246,26 @@ public class EditorPanel extends GamePanelBase
         repaint();
     }
 
+    @Override
+    public void onSolvabilityChanged(LevelAnalyzer.Verdict verdict) {
+        final String text = L10n.get(convertVerdictToTextId(verdict));
+        if (!text.equals(solvabilityText)) {
+            solvabilityText = text;
+            // The label isn't of a fixed width, so the sidebar is laid out again for
+            // the new text. Both the old and the new places are repainted
+            final Rectangle oldPosition = solvabilityLabel.getPosition();
+            solvabilityLabel.setText(text);
+            sidebar.invalidateLayout();
+            updateBarPositions();
+            if (oldPosition != null) {
+                repaint(oldPosition);
+            }
+            if (solvabilityLabel.getPosition() != null) {
+                repaint(solvabilityLabel.getPosition());
+            }
+        }
+    }
+
     @Override
     public void onControlClick(ControlBase control) {
         if (control.getType() == ImageControl.TYPE) {
@@ -174,6 +299,11 @@ public class EditorPanel extends GamePanelBase
             repaint();
         } else if (control.getType() == ButtonControl.TYPE) {
             switch (control.getId()) {
+                case TOOL_BUTTON_CONTROL_ID:
+                    tool = Tool.values()[(tool.ordinal() + 1) % Tool.values().length];
+                    toolButton.setText(L10n.get(tool.textId));
+                    repaint();
+                    break;
                 case SAVE_BUTTON_CONTROL_ID:
                     try {
                         onSave();
@@ -198,33 +328,75 @@ public class EditorPanel extends GamePanelBase
         return null;
     }
 
+    // Draws grid lines that are visible in the viewport. The lines are rendered
+    // into an overlay image that is reused while the cell size, the viewport and
+    // the scroll position inside a cell are the same
     private void drawFieldGrid(Graphics graphics) {
         renderIfRequired();
-        final Dimension fieldSize = getGame().getFieldSize();
         final Dimension cellSize = renderDetails.cellSize;
+        final Rectangle area = renderDetails.fieldArea;
+        if (area.isEmpty() || cellSize.width <= 0 || cellSize.height <= 0) {
+            return;
+        }
 
-        int y = renderDetails.fieldArea.y;
-        for (int rowIndex = 0; rowIndex <= fieldSize.height; ++rowIndex) {
-            drawDashedLine(graphics, renderDetails.fieldArea.x, y,
-                    renderDetails.fieldArea.x + renderDetails.fieldArea.width, y);
-            y += cellSize.height;
+        final Point phase = new Point(scrollOffset.x % cellSize.width, scrollOffset.y % cellSize.height);
+        // The grid is rendered in device pixels (as chunks of the field are), so it's
+        // drawn at its user space size without resampling
+        final double scale = ChunkCache.getDeviceScale(getGraphicsConfiguration());
+        if (gridImage == null || !cellSize.equals(gridCellSize) || !area.getSize().equals(gridAreaSize)
+                || !phase.equals(gridPhase) || scale != gridScale) {
+            gridImage = renderGrid(area.getSize(), cellSize, phase, scale);
+            gridCellSize = (Dimension) cellSize.clone();
+            gridAreaSize = area.getSize();
+            gridPhase = phase;
+            gridScale = scale;
         }
+        graphics.drawImage(gridImage, area.x, area.y, area.width + 1, area.height + 1, null);
+    }
 
-        int x = renderDetails.fieldArea.x;
-        for (int columnIndex = 0; columnIndex <= fieldSize.width; ++columnIndex) {
-            drawDashedLine(graphics, x, renderDetails.fieldArea.y, x,
-                    renderDetails.fieldArea.y + renderDetails.fieldArea.height);
-            x += cellSize.width;
+    // Renders grid of the area, lines on the bottom and right edges are included
+    private BufferedImage renderGrid(Dimension areaSize, Dimension cellSize, Point phase, double scale) {
+        final int width = (int) Math.ceil((areaSize.width + 1) * scale);
+        final int height = (int) Math.ceil((areaSize.height + 1) * scale);
+        final GraphicsConfiguration configuration = getGraphicsConfiguration();
+        final BufferedImage image = (configuration != null)
+                ? configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D graphics = image.createGraphics();
+        graphics.scale(scale, scale);
+        graphics.setColor(GRID_COLOR);
+        graphics.setStroke(GRID_STROKE);
+        for (int y = (phase.y == 0) ? 0 : cellSize.height - phase.y; y <= areaSize.height; y += cellSize.height) {
+            graphics.drawLine(0, y, areaSize.width, y);
+        }
+        for (int x = (phase.x == 0) ? 0 : cellSize.width - phase.x; x <= areaSize.width; x += cellSize.width) {
+            graphics.drawLine(x, 0, x, areaSize.height);
         }
+        graphics.dispose();
+        return image;
     }
 
-    private static void drawDashedLine(Graphics graphics, int x1, int y1, int x2, int y2) {
+    // Highlights cells of the rectangle or the line that is being drawn
+    private void drawShapePreview(Graphics graphics) {
+        if (shapeStart == null) {
+            return;
+        }
         Graphics2D graphics2d = (Graphics2D) graphics.create();
-        Color color = new Color(0, 0, 0, 50);
-        graphics2d.setColor(color);
-        Stroke dashed = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[] { 2 }, 0);
-        graphics2d.setStroke(dashed);
-        graphics2d.drawLine(x1, y1, x2, y2);
+        final Rectangle area = renderDetails.fieldArea;
+        graphics2d.clipRect(area.x, area.y, area.width, area.height);
+        graphics2d.setColor(SHAPE_PREVIEW_COLOR);
+        if (tool == Tool.RECTANGLE) {
+            final Rectangle rect = calcCellRect(shapeStart.x, shapeStart.y);
+            rect.add(calcCellRect(shapeEnd.x, shapeEnd.y));
+            graphics2d.fillRect(rect.x, rect.y, rect.width, rect.height);
+        } else {
+            final int width = getGame().getFieldSize().width;
+            for (int index : calcLineCells(shapeStart, shapeEnd)) {
+                final Rectangle rect = calcCellRect(index % width, index / width);
+                graphics2d.fillRect(rect.x, rect.y, rect.width, rect.height);
+            }
+        }
         graphics2d.dispose();
     }
 
@@ -253,6 +425,13 @@ public class EditorPanel extends GamePanelBase
         sidebar.addSpacer(true, PADDING);
         addClickableTopImage("floor.png", FLOOR_CONTROL_ID);
 
+        sidebar.addSpacer(true, PADDING);
+        toolButton = new ButtonControl(L10n.get(tool.textId), TOOL_BUTTON_CONTROL_ID);
+        addClickableControl(toolButton, true);
+
+        sidebar.addSpacer(true, PADDING);
+        sidebar.addControl(solvabilityLabel, true);
+
         sidebar.addSpacer(true, PADDING);
         addTopLabel(L10n.Id.HEIGHT);
         sidebar.addSpacer(true, PADDING / 2);
@@ -276,6 +455,37 @@ public class EditorPanel extends GamePanelBase
         addClickableControl(new ImageControl(resourceId, controlId, true), true);
     }
 
+    private static L10n.Id convertVerdictToTextId(LevelAnalyzer.Verdict verdict) {
+        if (verdict == null) {
+            return L10n.Id.BADGE_CHECKING;
+        }
+        switch (verdict) {
+            case NO_MOLE:
+                return L10n.Id.BADGE_NO_MOLE;
+            case TOO_FEW_BOXES:
+                return L10n.Id.BADGE_TOO_FEW_BOXES;
+            case NOT_CLOSED:
+                return L10n.Id.BADGE_NOT_CLOSED;
+            case UNREACHABLE:
+                return L10n.Id.BADGE_UNREACHABLE;
+            case DEAD_BOXES:
+                return L10n.Id.BADGE_DEAD_BOXES;
+            case SOLVABLE:
+                return L10n.Id.BADGE_SOLVABLE;
+            case UNSOLVABLE:
+                return L10n.Id.BADGE_UNSOLVABLE;
+            default:
+                return L10n.Id.BADGE_UNKNOWN;
+        }
+    }
+
+    // The level has to be checked again
+    private void onLevelEdited() {
+        if (solvabilityChecker != null) {
+            solvabilityChecker.onLevelChanged();
+        }
+    }
+
     private void addTopLabel(L10n.Id stringId) {
         sidebar.addControl(new LabelControl(L10n.get(stringId), LabelControl.Alignment.CENTER), true);
     }
@@ -294,14 +504,7 @@ public class EditorPanel extends GamePanelBase
     }
 
     private ControlBase getControlUnderPoint(Point point) {
-        List<ControlBase> sidebarControls = sidebar.getControls();
-        for (ControlBase control : sidebarControls) {
-            final Rectangle rect = control.getPosition();
-            if (rect.contains(point)) {
-                return control;
-            }
-        }
-        return null;
+        return sidebar.getControlAt(point);
     }
 
     private void setCursor(int cursorId) {
@@ -324,50 +527,299 @@ public class EditorPanel extends GamePanelBase
         if (game == null || cellCoordinates == null) {
             return;
         }
-        Cell cell = game.getCell(cellCoordinates.x, cellCoordinates.y);
-        Point molePos = game.getMolePosition();
-        final boolean isMoleCell = (molePos != null) && cellCoordinates.equals(molePos);
-        Point newMolePosition = game.getMolePosition();
-        boolean addTargetPoint = false;
-        boolean addBox = false;
+        final int newState = calcCellState(fieldType, readCellState(cellCoordinates));
+        // There is only one mole, so it's removed from its previous cell
+        final Point molePos = game.getMolePosition();
+        if (EditorHistory.hasMole(newState) && (molePos != null) && !molePos.equals(cellCoordinates)) {
+            changeCell(molePos, EditorHistory.withoutMole(readCellState(molePos)));
+        }
+        changeCell(cellCoordinates, newState);
+    }
+
+    private static int calcCellState(FieldType fieldType, int prevState) {
         switch (fieldType) {
             case MOLE:
-                cell.type = Cell.Type.FLOOR;
-                newMolePosition = cellCoordinates;
-                break;
+                return EditorHistory.packState(Cell.Type.FLOOR, false, false, true);
             case BOX_ACTIVE:
-                cell.type = Cell.Type.FLOOR;
-                addTargetPoint = true;
-                addBox = true;
-                newMolePosition = isMoleCell ? null : newMolePosition;
-                break;
+                return EditorHistory.packState(Cell.Type.FLOOR, true, true, false);
             case BOX_INACTIVE:
-                cell.type = Cell.Type.FLOOR;
-                addBox = true;
-                newMolePosition = isMoleCell ? null : newMolePosition;
-                break;
+                return EditorHistory.packState(Cell.Type.FLOOR, true, false, false);
             case TARGET_POINT:
-                cell.type = Cell.Type.FLOOR;
-                addTargetPoint = true;
-                newMolePosition = isMoleCell ? null : newMolePosition;
-                break;
+                return EditorHistory.packState(Cell.Type.FLOOR, false, true, false);
             case WALL:
-                cell.type = Cell.Type.WALL;
-                newMolePosition = isMoleCell ? null : newMolePosition;
-                break;
+                return EditorHistory.packState(Cell.Type.WALL, false, false, false);
             case FLOOR:
-                cell.type = Cell.Type.FLOOR;
+                // The mole stays on the floor
+                return EditorHistory.packState(Cell.Type.FLOOR, false, false, EditorHistory.hasMole(prevState));
+            default:
+                return EditorHistory.packState(Cell.Type.NULL, false, false, false);
+        }
+    }
+
+    private int readCellState(Point cell) {
+        Game game = getGame();
+        return EditorHistory.packState(game.getCellType(cell.x, cell.y), game.hasBox(cell.x, cell.y),
+                game.hasTargetPoint(cell.x, cell.y), cell.equals(game.getMolePosition()));
+    }
+
+    // Changes the cell and records the change into the history
+    private void changeCell(Point cell, int newState) {
+        final int prevState = readCellState(cell);
+        if (newState == prevState) {
+            return;
+        }
+        history.record(cell, prevState, newState);
+        applyCellState(cell, newState);
+    }
+
+    private void applyCellState(Point cell, int state) {
+        Game game = getGame();
+        game.setCellType(cell.x, cell.y, EditorHistory.getType(state));
+        game.setTargetPoint(cell, EditorHistory.hasTargetPoint(state));
+        game.setBoxPoint(cell, EditorHistory.hasBox(state));
+        if (EditorHistory.hasMole(state)) {
+            game.setMolePosition(cell);
+        } else if (cell.equals(game.getMolePosition())) {
+            game.setMolePosition(null);
+        }
+
+        invalidateCell(cell);
+        addDirtyCell(cell);
+        onLevelEdited();
+    }
+
+    private void undo() {
+        final EditorHistory.Batch batch = history.undo();
+        if (batch != null) {
+            applyBatch(batch, true);
+        }
+    }
+
+    private void redo() {
+        final EditorHistory.Batch batch = history.redo();
+        if (batch != null) {
+            applyBatch(batch, false);
+        }
+    }
+
+    // Reverts or applies again all changes of the batch. Cells that get the same
+    // state are changed in the game at once. Only the changed cells are sorted,
+    // so the cost doesn't depend on the field size
+    private void applyBatch(EditorHistory.Batch batch, boolean undo) {
+        Game game = getGame();
+        final int width = game.getFieldSize().width;
+        final int count = batch.size();
+        // Changes packed as (cell index, order of applying) and sorted, so the last
+        // applied change of every cell ends its run: undo applies changes from the
+        // last one and takes the state before it, redo takes the state after it
+        final long[] changes = new long[count];
+        Rectangle bounds = null;
+        for (int order = 0; order < count; ++order) {
+            final Point cell = batch.getCell(undo ? count - 1 - order : order);
+            changes[order] = ((long) (cell.y * width + cell.x) << 32) | order;
+            bounds = addCellToBounds(bounds, cell);
+        }
+        Arrays.sort(changes);
+
+        // Final states packed as (state, cell index) and sorted, so cells that get
+        // the same state make a run
+        final Point molePos = game.getMolePosition();
+        final int moleIndex = (molePos == null) ? -1 : molePos.y * width + molePos.x;
+        Point newMolePosition = molePos;
+        final long[] finalStates = new long[count];
+        int changedCount = 0;
+        for (int i = 0; i < count; ++i) {
+            final int index = (int) (changes[i] >>> 32);
+            if (i + 1 < count && (int) (changes[i + 1] >>> 32) == index) {
+                continue;
+            }
+            final int order = (int) changes[i];
+            final int state = undo ? batch.getStateBefore(count - 1 - order) : batch.getStateAfter(order);
+            if (index == moleIndex && !EditorHistory.hasMole(state)) {
+                newMolePosition = null;
+            }
+            finalStates[changedCount++] = ((long) state << 32) | index;
+        }
+        Arrays.sort(finalStates, 0, changedCount);
+
+        final int[] group = new int[changedCount];
+        int i = 0;
+        while (i < changedCount) {
+            final int state = (int) (finalStates[i] >>> 32);
+            int groupSize = 0;
+            while (i < changedCount && (int) (finalStates[i] >>> 32) == state) {
+                group[groupSize++] = (int) finalStates[i++];
+            }
+            game.setCells(group, groupSize, EditorHistory.getType(state), EditorHistory.hasBox(state),
+                    EditorHistory.hasTargetPoint(state));
+            if (EditorHistory.hasMole(state)) {
+                newMolePosition = new Point(group[0] % width, group[0] / width);
+            }
+        }
+        game.setMolePosition(newMolePosition);
+
+        invalidateCells(bounds);
+        addDirtyCells(bounds);
+        onLevelEdited();
+    }
+
+    // Applies the tool to the cell the user has clicked
+    private void applyTool(Point cellCoordinates, FieldType fieldType) {
+        // There is only one mole, so it's always put with the pen
+        if (fieldType == FieldType.MOLE || tool == Tool.PEN) {
+            applySelectedCell(cellCoordinates, fieldType);
+            return;
+        }
+        switch (tool) {
+            case FILL:
+                applyToCells(getGame().findCellRegion(cellCoordinates.x, cellCoordinates.y), fieldType);
                 break;
-            case NULL:
-                cell.type = Cell.Type.NULL;
-                newMolePosition = isMoleCell ? null : newMolePosition;
+            case RECTANGLE:
+            case LINE:
+                shapeStart = cellCoordinates;
+                shapeEnd = cellCoordinates;
+                shapeFieldType = fieldType;
+                addDirtyCells(calcShapeBounds());
+                break;
+            default:
                 break;
         }
-        game.setTargetPoint(cellCoordinates, addTargetPoint);
-        game.setBoxPoint(cellCoordinates, addBox);
-        game.setMolePosition(newMolePosition);
+    }
 
-        repaint();
+    // Applies the field type to many cells (their indexes are row by row) with one
+    // change of the game. All the changes are recorded into the current batch
+    private void applyToCells(int[] indexes, FieldType fieldType) {
+        Game game = getGame();
+        final int width = game.getFieldSize().width;
+        final Point molePos = game.getMolePosition();
+        final int moleIndex = (molePos == null) ? -1 : molePos.y * width + molePos.x;
+        final int[] changed = new int[indexes.length];
+        int changedCount = 0;
+        boolean moleRemoved = false;
+        Rectangle bounds = null;
+        for (int index : indexes) {
+            final Point cell = new Point(index % width, index / width);
+            final int prevState = EditorHistory.packState(game.getCellType(cell.x, cell.y),
+                    game.hasBox(cell.x, cell.y), game.hasTargetPoint(cell.x, cell.y), index == moleIndex);
+            final int newState = calcCellState(fieldType, prevState);
+            if (newState == prevState) {
+                continue;
+            }
+            history.record(cell, prevState, newState);
+            changed[changedCount++] = index;
+            moleRemoved |= (index == moleIndex) && !EditorHistory.hasMole(newState);
+            bounds = addCellToBounds(bounds, cell);
+        }
+        if (changedCount == 0) {
+            return;
+        }
+
+        final int newState = calcCellState(fieldType, 0);
+        game.setCells(changed, changedCount, EditorHistory.getType(newState), EditorHistory.hasBox(newState),
+                EditorHistory.hasTargetPoint(newState));
+        if (moleRemoved) {
+            game.setMolePosition(null);
+        }
+        invalidateCells(bounds);
+        addDirtyCells(bounds);
+        onLevelEdited();
+    }
+
+    private static Rectangle addCellToBounds(Rectangle bounds, Point cell) {
+        if (bounds == null) {
+            return new Rectangle(cell.x, cell.y, 1, 1);
+        }
+        bounds.add(new Rectangle(cell.x, cell.y, 1, 1));
+        return bounds;
+    }
+
+    // Returns cells (column, row, count of columns, count of rows) that the shape
+    // being drawn can cover
+    private Rectangle calcShapeBounds() {
+        Rectangle bounds = new Rectangle(shapeStart.x, shapeStart.y, 1, 1);
+        bounds.add(new Rectangle(shapeEnd.x, shapeEnd.y, 1, 1));
+        return bounds;
+    }
+
+    private int[] calcRectangleCells(Point from, Point to) {
+        final int width = getGame().getFieldSize().width;
+        final int minX = Math.min(from.x, to.x);
+        final int minY = Math.min(from.y, to.y);
+        final int columnCount = Math.abs(to.x - from.x) + 1;
+        final int rowCount = Math.abs(to.y - from.y) + 1;
+        int[] result = new int[columnCount * rowCount];
+        int count = 0;
+        for (int y = minY; y < minY + rowCount; ++y) {
+            for (int x = minX; x < minX + columnCount; ++x) {
+                result[count++] = y * width + x;
+            }
+        }
+        return result;
+    }
+
+    // Returns cells of the line (Bresenham's algorithm)
+    private int[] calcLineCells(Point from, Point to) {
+        final int width = getGame().getFieldSize().width;
+        final int dx = Math.abs(to.x - from.x);
+        final int dy = -Math.abs(to.y - from.y);
+        final int stepX = (from.x < to.x) ? 1 : -1;
+        final int stepY = (from.y < to.y) ? 1 : -1;
+        int[] result = new int[Math.max(dx, -dy) + 1];
+        int count = 0;
+        int x = from.x;
+        int y = from.y;
+        int error = dx + dy;
+        while (true) {
+            result[count++] = y * width + x;
+            if (x == to.x && y == to.y) {
+                break;
+            }
+            final int doubledError = 2 * error;
+            if (doubledError >= dy) {
+                error += dy;
+                x += stepX;
+            }
+            if (doubledError <= dx) {
+                error += dx;
+                y += stepY;
+            }
+        }
+        return result;
+    }
+
+    // Adds the cell to the region that is repainted with the next frame
+    private void addDirtyCell(Point cell) {
+        addDirtyCells(new Rectangle(cell.x, cell.y, 1, 1));
+    }
+
+    // Adds cells (column, row, count of columns, count of rows) to the region that
+    // is repainted with the next frame
+    private void addDirtyCells(Rectangle cells) {
+        if (cells == null || cells.isEmpty()) {
+            return;
+        }
+        renderIfRequired();
+        Rectangle cellRect = calcCellRect(cells.x, cells.y);
+        cellRect.add(calcCellRect(cells.x + cells.width - 1, cells.y + cells.height - 1));
+        cellRect = cellRect.intersection(renderDetails.fieldArea);
+        if (cellRect.isEmpty()) {
+            return;
+        }
+        if (dirtyRegion == null) {
+            dirtyRegion = cellRect;
+        } else {
+            dirtyRegion.add(cellRect);
+        }
+        if (!repaintTimer.isRunning()) {
+            repaintTimer.start();
+        }
+    }
+
+    private void flushDirtyRegion() {
+        if (dirtyRegion != null) {
+            repaint(dirtyRegion);
+            dirtyRegion = null;
+        }
     }
 
     private void processClick(MouseEvent e) {
@@ -377,7 +829,7 @@ public class EditorPanel extends GamePanelBase
             final Point coordinates = findCellUnderPoint((Point) mousePos.clone());
             if ( (coordinates != null) && (e.getButton() != MouseEvent.NOBUTTON) ) {
                 FieldType fieldType = (e.getButton() == MouseEvent.BUTTON1) ? selectedFieldType : FieldType.NULL;
-                applySelectedCell(coordinates, fieldType);
+                applyTool(coordinates, fieldType);
             }
         } else {
             final Rectangle position = control.getPosition();
@@ -390,6 +842,16 @@ public class EditorPanel extends GamePanelBase
         LevelStorage.save(this, getGame());
     }
 
+    private enum Tool {
+        PEN(L10n.Id.TOOL_PEN), FILL(L10n.Id.TOOL_FILL), RECTANGLE(L10n.Id.TOOL_RECTANGLE), LINE(L10n.Id.TOOL_LINE);
+
+        Tool(L10n.Id textId) {
+            this.textId = textId;
+        }
+
+        private final L10n.Id textId;
+    }
+
     private enum FieldType {
         MOLE, BOX_ACTIVE, BOX_INACTIVE, TARGET_POINT, WALL, FLOOR, NULL
     }
@@ -398,6 +860,27 @@ public class EditorPanel extends GamePanelBase
     private PanelBar sidebar = new PanelBar(false);
     private int sidebarWidth = 150;
     private FieldType selectedFieldType = FieldType.NULL;
+    private final EditorHistory history = new EditorHistory();
+    private final Timer repaintTimer;
+    private Rectangle dirtyRegion = null;
+    private Tool tool = Tool.PEN;
+    private ButtonControl toolButton = null;
+    // Rectangle or line that is being drawn
+    private Point shapeStart = null;
+    private Point shapeEnd = null;
+    private FieldType shapeFieldType = FieldType.NULL;
+    private SolvabilityChecker solvabilityChecker = null;
+    private final LabelControl solvabilityLabel = new LabelControl("", LabelControl.Alignment.CENTER);
+    private String solvabilityText = null;
+    private BufferedImage gridImage = null;
+    private Dimension gridCellSize = null;
+    private Dimension gridAreaSize = null;
+    private Point gridPhase = null;
+    private double gridScale = 1.0;
+    private static final Color GRID_COLOR = new Color(0, 0, 0, 50);
+    private static final BasicStroke GRID_STROKE = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL,
+            0, new float[] { 2 }, 0);
+    private static final Color SHAPE_PREVIEW_COLOR = new Color(255, 255, 255, 100);
     private static final int DEFAULT_FIELD_WIDTH = 25;
     private static final int DEFAULT_FIELD_HEIGHT = 15;
     private static final String MOLE_CONTROL_ID = "MoleImageControlId";
@@ -406,6 +889,7 @@ public class EditorPanel extends GamePanelBase
     private static final String TARGET_POINT_CONTROL_ID = "TargetPointImageControlId";
     private static final String WALL_CONTROL_ID = "WallImageControlId";
     private static final String FLOOR_CONTROL_ID = "FloorImageControlId";
+    private static final String TOOL_BUTTON_CONTROL_ID = "ToolButton";
     private static final String HEIGHT_CONTROL_ID = "HeightControlId";
     private static final String WIDTH_CONTROL_ID = "WidthControlId";
     private static final String SAVE_BUTTON_CONTROL_ID = "SaveButton";
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package editor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+import game.Game;
+import utils.ResourceUtils;
+
+/**
+ * The {@LevelIndex} is a persistent catalog of level files of one directory:
+ * names, sizes, box counts and hashes of the levels, and the best step counts
+ * of solved levels. The catalog is kept in a file, on rebuild only files which
+ * modification time or size has been changed are parsed again (in parallel).
+ * Levels are sorted by name (numbers in names are compared as numbers), scores
+ * are kept by level hash, so a renamed or copied level keeps its score. All
+ * methods are thread-safe.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class LevelIndex {
+    public static final class Entry {
+        public String getName() {
+            return name;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getBoxCount() {
+            return boxCount;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        private Entry(String name, long modificationTime, long fileSize, int width, int height, int boxCount,
+                long hash) {
+            this.name = name;
+            this.modificationTime = modificationTime;
+            this.fileSize = fileSize;
+            this.width = width;
+            this.height = height;
+            this.boxCount = boxCount;
+            this.hash = hash;
+        }
+
+        private final String name;
+        private final long modificationTime;
+        private final long fileSize;
+        private final int width;
+        private final int height;
+        private final int boxCount;
+        private final long hash;
+    }
+
+    // Index of predefined levels. If it hasn't been built yet, it's built on the
+    // calling thread, or, if it's being built (see buildPredefined()), the call
+    // waits for it
+    public static LevelIndex getPredefined() {
+        final CompletableFuture<LevelIndex> building;
+        boolean isBuilder = false;
+        synchronized (LevelIndex.class) {
+            if (predefined == null) {
+                predefined = new CompletableFuture<LevelIndex>();
+                isBuilder = true;
+            }
+            building = predefined;
+        }
+        if (isBuilder) {
+            buildPredefined(building);
+        }
+        return building.join();
+    }
+
+    // Starts building the index of predefined levels on the executor, so the
+    // first getPredefined() (e.g. on the event dispatch thread) doesn't build it
+    public static void buildPredefined(Executor executor) {
+        synchronized (LevelIndex.class) {
+            if (predefined == null) {
+                final CompletableFuture<LevelIndex> building = new CompletableFuture<LevelIndex>();
+                predefined = building;
+                executor.execute(() -> buildPredefined(building));
+            }
+        }
+    }
+
+    // The directory may be null, then the index contains only scores
+    public LevelIndex(Path directory, Path indexFile) {
+        this.directory = directory;
+        this.indexFile = indexFile;
+    }
+
+    // Synchronizes the index with the directory and saves it if anything has been
+    // changed
+    public synchronized void rebuild() {
+        if (!isLoaded) {
+            load();
+            isLoaded = true;
+        }
+        if (directory == null) {
+            return;
+        }
+
+        final Map<String, BasicFileAttributes> files = new TreeMap<String, BasicFileAttributes>();
+        final List<Path> changedFiles = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*." + LEVEL_FILE_EXTENSION)) {
+            for (Path file : stream) {
+                final String name = file.getFileName().toString();
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                files.put(name, attributes);
+                final Entry entry = entries.get(name);
+                if (entry == null || entry.modificationTime != attributes.lastModifiedTime().toMillis()
+                        || entry.fileSize != attributes.size()) {
+                    changedFiles.add(file);
+                }
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            return;
+        }
+
+        boolean isChanged = entries.keySet().retainAll(files.keySet());
+        final Map<String, Entry> parsedEntries = new ConcurrentHashMap<String, Entry>();
+        changedFiles.parallelStream().forEach(file -> {
+            final String name = file.getFileName().toString();
+            final Entry entry = parse(file, files.get(name));
+            if (entry != null) {
+                parsedEntries.put(name, entry);
+            }
+        });
+        for (Path file : changedFiles) {
+            final String name = file.getFileName().toString();
+            final Entry entry = parsedEntries.get(name);
+            if (entry != null) {
+                entries.put(name, entry);
+            } else {
+                entries.remove(name);
+            }
+            isChanged = true;
+        }
+
+        if (isChanged) {
+            updateNamesByHash();
+            save();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Returns null if there is no such level
+    public synchronized Entry get(String name) {
+        return entries.get(name);
+    }
+
+    // Returns the first (by name) level with the hash or null
+    public synchronized Entry findByHash(long hash) {
+        final String name = namesByHash.get(hash);
+        return (name == null) ? null : entries.get(name);
+    }
+
+    // Returns levels in name order
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    // Returns levels which names are in the range [fromName, toName) in name order
+    public synchronized List<Entry> getEntries(String fromName, String toName) {
+        return new ArrayList<Entry>(entries.subMap(fromName, toName).values());
+    }
+
+    public synchronized List<Entry> getEntries(Predicate<Entry> filter) {
+        final List<Entry> result = new ArrayList<Entry>();
+        for (Entry entry : entries.values()) {
+            if (filter.test(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    public synchronized boolean isSolved(long hash) {
+        return bestStepCounts.containsKey(hash);
+    }
+
+    // Returns 0 if the level hasn't been solved
+    public synchronized int getBestStepCount(long hash) {
+        final Integer stepCount = bestStepCounts.get(hash);
+        return (stepCount == null) ? 0 : stepCount;
+    }
+
+    // Keeps the step count if it's the best one and saves the index
+    public synchronized void markSolved(long hash, int stepCount) {
+        if (!isLoaded) {
+            load();
+            isLoaded = true;
+        }
+        final Integer bestStepCount = bestStepCounts.get(hash);
+        if (bestStepCount == null || stepCount < bestStepCount) {
+            bestStepCounts.put(hash, stepCount);
+            save();
+        }
+    }
+
+    private static void buildPredefined(CompletableFuture<LevelIndex> building) {
+        try {
+            final Path directory = ResourceUtils.findResourceDirectory(LevelStorage.getPredefinedResourceId(1));
+            final LevelIndex index = new LevelIndex(directory,
+                    Paths.get(System.getProperty("user.home"), INDEX_DIRECTORY, PREDEFINED_INDEX_FILE));
+            index.rebuild();
+            building.complete(index);
+        } catch (RuntimeException | Error exception) {
+            // Callers waiting for the index mustn't wait forever
+            building.completeExceptionally(exception);
+            throw exception;
+        }
+    }
+
+    private static Entry parse(Path file, BasicFileAttributes attributes) {
+        try {
+            final Game game = LevelStorage.loadFromPath(file);
+            if (game == null) {
+                return null;
+            }
+            return new Entry(file.getFileName().toString(), attributes.lastModifiedTime().toMillis(),
+                    attributes.size(), game.getFieldSize().width, game.getFieldSize().height,
+                    game.getBoxes().size(), game.getLevelHash());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    private void updateNamesByHash() {
+        namesByHash.clear();
+        for (Entry entry : entries.values()) {
+            namesByHash.putIfAbsent(entry.hash, entry.name);
+        }
+    }
+
+    // Lines of the file: a header, "L" lines with levels and "S" lines with scores.
+    // Values are separated by tabs
+    private void load() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            if (!FILE_HEADER.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] values = line.split("\t");
+                if (values.length == 8 && values[0].equals(LEVEL_LINE)) {
+                    entries.put(values[1],
+                            new Entry(values[1], Long.parseLong(values[2]), Long.parseLong(values[3]),
+                                    Integer.parseInt(values[4]), Integer.parseInt(values[5]),
+                                    Integer.parseInt(values[6]), Long.parseUnsignedLong(values[7], 16)));
+                } else if (values.length == 3 && values[0].equals(SCORE_LINE)) {
+                    bestStepCounts.put(Long.parseUnsignedLong(values[1], 16), Integer.parseInt(values[2]));
+                }
+            }
+        } catch (IOException | NumberFormatException exception) {
+            // A broken index is rebuilt from scratch
+            exception.printStackTrace();
+            entries.clear();
+        }
+        updateNamesByHash();
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(indexFile.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+                writer.write(FILE_HEADER);
+                writer.newLine();
+                for (Entry entry : entries.values()) {
+                    writer.write(String.join("\t", LEVEL_LINE, entry.name, Long.toString(entry.modificationTime),
+                            Long.toString(entry.fileSize), Integer.toString(entry.width),
+                            Integer.toString(entry.height), Integer.toString(entry.boxCount),
+                            Long.toHexString(entry.hash)));
+                    writer.newLine();
+                }
+                for (Map.Entry<Long, Integer> score : bestStepCounts.entrySet()) {
+                    writer.write(String.join("\t", SCORE_LINE, Long.toHexString(score.getKey()),
+                            Integer.toString(score.getValue())));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    // Compares names so that numbers inside of them are compared by value
+    // ("level2" < "level10")
+    private static int compareNames(String name1, String name2) {
+        int index1 = 0;
+        int index2 = 0;
+        while (index1 < name1.length() && index2 < name2.length()) {
+            final char char1 = name1.charAt(index1);
+            final char char2 = name2.charAt(index2);
+            if (Character.isDigit(char1) && Character.isDigit(char2)) {
+                final int end1 = skipDigits(name1, index1);
+                final int end2 = skipDigits(name2, index2);
+                final String number1 = name1.substring(index1, end1).replaceFirst("^0+(?=.)", "");
+                final String number2 = name2.substring(index2, end2).replaceFirst("^0+(?=.)", "");
+                int result = Integer.compare(number1.length(), number2.length());
+                if (result == 0) {
+                    result = number1.compareTo(number2);
+                }
+                if (result != 0) {
+                    return result;
+                }
+                index1 = end1;
+                index2 = end2;
+            } else {
+                if (char1 != char2) {
+                    return Character.compare(char1, char2);
+                }
+                ++index1;
+                ++index2;
+            }
+        }
+        final int result = Integer.compare(name1.length() - index1, name2.length() - index2);
+        // Names which differ only in leading zeros mustn't be equal
+        return (result != 0) ? result : name1.compareTo(name2);
+    }
+
+    private static int skipDigits(String name, int index) {
+        while (index < name.length() && Character.isDigit(name.charAt(index))) {
+            ++index;
+        }
+        return index;
+    }
+
+    private final Path directory;
+    private final Path indexFile;
+    private boolean isLoaded = false;
+    private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>(LevelIndex::compareNames);
+    private final TreeMap<Long, String> namesByHash = new TreeMap<Long, String>();
+    private final TreeMap<Long, Integer> bestStepCounts = new TreeMap<Long, Integer>();
+    // Completed when the index of predefined levels is built
+    private static CompletableFuture<LevelIndex> predefined = null;
+    private static final String INDEX_DIRECTORY = ".wisemole";
+    private static final String PREDEFINED_INDEX_FILE = "predefined.index";
+    private static final String LEVEL_FILE_EXTENSION = "wmgame";
+    private static final String FILE_HEADER = "WiseMole level index 1";
+    private static final String LEVEL_LINE = "L";
+    private static final String SCORE_LINE = "S";
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package editor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import game.Game;
+
+/**
+ * The {@LevelPackBenchmark} measures how fast a pack of levels is parsed. The
+ * levels are read into memory first, then they are parsed by lines (as text)
+ * and straight from byte buffers, throughput of both ways is printed.
+ *
+ * Usage: LevelPackBenchmark [directory with .wmgame files] [round count]. The
+ * predefined levels are used if there is no directory.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class LevelPackBenchmark {
+    public static void main(String[] args) throws IOException {
+        final List<byte[]> pack = (args.length > 0) ? readDirectory(Paths.get(args[0])) : readPredefined();
+        final int roundCount = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ROUND_COUNT;
+        if (pack.isEmpty()) {
+            System.out.println("There are no levels");
+            return;
+        }
+        System.out.println("Levels: " + pack.size() + ", rounds: " + roundCount);
+
+        // The first round warms the code up and isn't measured
+        parseLines(pack);
+        parseBuffers(pack);
+
+        long linesNanos = 0;
+        long buffersNanos = 0;
+        for (int round = 0; round < roundCount; ++round) {
+            linesNanos += parseLines(pack);
+            buffersNanos += parseBuffers(pack);
+        }
+        final long levelCount = (long) pack.size() * roundCount;
+        printThroughput("Lines", levelCount, linesNanos);
+        printThroughput("Byte buffers", levelCount, buffersNanos);
+    }
+
+    // Returns duration of parsing in nanoseconds
+    private static long parseLines(List<byte[]> pack) {
+        final long start = System.nanoTime();
+        for (byte[] bytes : pack) {
+            final String text = new String(bytes, StandardCharsets.UTF_8);
+            final Game game = new Game("");
+            if (!game.loadGame(Arrays.asList(text.split("\r?\n")))) {
+                throw new IllegalStateException("The level can't be parsed");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // Returns duration of parsing in nanoseconds
+    private static long parseBuffers(List<byte[]> pack) {
+        final long start = System.nanoTime();
+        for (byte[] bytes : pack) {
+            final Game game = new Game("");
+            if (!game.loadGame(ByteBuffer.wrap(bytes))) {
+                throw new IllegalStateException("The level can't be parsed");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void printThroughput(String name, long levelCount, long nanos) {
+        final double seconds = Math.max(nanos, 1) / 1e9;
+        System.out.printf("%s: %.0f levels/s (%.1f us per level)%n", name, levelCount / seconds,
+                seconds * 1e6 / levelCount);
+    }
+
+    private static List<byte[]> readDirectory(Path directory) throws IOException {
+        List<byte[]> pack = new ArrayList<byte[]>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*." + LEVEL_FILE_EXTENSION)) {
+            for (Path file : files) {
+                pack.add(Files.readAllBytes(file));
+            }
+        }
+        return pack;
+    }
+
+    private static List<byte[]> readPredefined() throws IOException {
+        List<byte[]> pack = new ArrayList<byte[]>();
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        for (int index = 1;; ++index) {
+            try (InputStream input = classLoader
+                    .getResourceAsStream("game/level" + index + "." + LEVEL_FILE_EXTENSION)) {
+                if (input == null) {
+                    return pack;
+                }
+                pack.add(input.readAllBytes());
+            }
+        }
+    }
+
+    private static final int DEFAULT_ROUND_COUNT = 200;
+    private static final String LEVEL_FILE_EXTENSION = "wmgame";
+}
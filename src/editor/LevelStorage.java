@@ -17,23 +17,26 @@
 package editor;
 
 import java.awt.Component;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import game.Game;
+import game.LevelCodec;
 import localization.L10n;
 
 /**
@@ -65,8 +68,10 @@ public class LevelStorage {
             return;
         }
 
-        final byte[] data = game.getBinaryData();
-        Files.write(filePath, data, StandardOpenOption.CREATE_NEW);
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            LevelCodec.encode(game, channel);
+        }
     }
 
     static public Game loadFromFile(Component dialogParent) {
@@ -84,53 +89,117 @@ public class LevelStorage {
         }
 
         try {
-            List<String> lines = Files.readAllLines(Paths.get(file.getAbsolutePath()));
-            if (lines == null) {
-                return null;
-            }
-            Game game = new Game(file.getName());
-            if (game.loadGame(lines)) {
-                return game;
+            return loadFromPath(Paths.get(file.getAbsolutePath()));
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    // Returns null if the file isn't a level
+    static public Game loadFromPath(Path filePath) throws IOException {
+        // The file is read into a heap buffer of its size. It isn't mapped: a mapped
+        // file stays locked until the buffer is collected, so on Windows it can't
+        // be deleted or overwritten. Files in archives (e.g. predefined levels in a
+        // jar) are read the same way
+        final ByteBuffer buffer;
+        try (SeekableByteChannel channel = Files.newByteChannel(filePath, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
             }
+        }
+        buffer.flip();
+        Game game = new Game(filePath.getFileName().toString());
+        return game.loadGame(buffer) ? game : null;
+    }
+
+    // Returns hash of the level (see Game.getLevelHash()) or null if the file
+    // can't be loaded
+    static public Long getLevelHash(Path filePath) {
+        try {
+            final Game game = loadFromPath(filePath);
+            return (game == null) ? null : game.getLevelHash();
         } catch (IOException exception) {
             exception.printStackTrace();
         }
         return null;
     }
 
+    // Returns null if there is no such level
+    static public Long getPredefinedLevelHash(int index) {
+        final Game game = loadPredefined(index);
+        return (game == null) ? null : game.getLevelHash();
+    }
+
+    // Hashes the files on all cores. Files that can't be loaded are skipped
+    static public Map<Path, Long> getLevelHashes(List<Path> filePaths) {
+        final Map<Path, Long> hashes = new ConcurrentHashMap<Path, Long>();
+        filePaths.parallelStream().forEach(filePath -> {
+            final Long hash = getLevelHash(filePath);
+            if (hash != null) {
+                hashes.put(filePath, hash);
+            }
+        });
+        return hashes;
+    }
+
     public static boolean hasPredefined(int index) {
+        final LevelIndex levelIndex = LevelIndex.getPredefined();
+        if (levelIndex.size() > 0) {
+            return levelIndex.get(getPredefinedFileName(index)) != null;
+        }
+        // The index is empty if the predefined levels can't be listed
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         return classLoader.getResource(getPredefinedResourceId(index)) != null;
     }
 
     public static int predefinedLevelCount() {
         if (levelCount == null) {
-            levelCount = 0;
-            for (int i = 1; hasPredefined(i); ++i) {
-                levelCount = i;
+            final LevelIndex levelIndex = LevelIndex.getPredefined();
+            int count = levelIndex.size();
+            if (count > 0) {
+                // Levels are numbered from 1, the directory may have other files
+                while (count > 0 && levelIndex.get(getPredefinedFileName(count)) == null) {
+                    --count;
+                }
+            } else {
+                // The index is empty if the predefined levels can't be listed
+                while (hasPredefined(count + 1)) {
+                    ++count;
+                }
             }
+            levelCount = count;
         }
         return levelCount;
     }
 
+    // Returns null if there is no such level in the index
+    public static LevelIndex.Entry getPredefinedEntry(int index) {
+        return LevelIndex.getPredefined().get(getPredefinedFileName(index));
+    }
+
+    // Returns 0 if the level hasn't been solved
+    public static int getBestStepCount(long levelHash) {
+        return LevelIndex.getPredefined().getBestStepCount(levelHash);
+    }
+
+    // The level is identified by the hash it had before the first step
+    public static void onLevelSolved(long levelHash, int stepCount) {
+        LevelIndex.getPredefined().markSolved(levelHash, stepCount);
+    }
+
     static public Game loadPredefined(int index) {
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         try (InputStream input = classLoader.getResourceAsStream(getPredefinedResourceId(index))) {
             if (input == null) {
                 return null;
             }
-            List<String> lines = new ArrayList<String>();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    lines.add(line);
-                }
-                Game game = new Game(Integer.toString(index));
-                if (game.loadGame(lines)) {
-                    return game;
-                }
-            } catch (IOException exception) {
-                exception.printStackTrace();
+            Game game = new Game(Integer.toString(index));
+            if (game.loadGame(ByteBuffer.wrap(input.readAllBytes()))) {
+                return game;
             }
         } catch (IOException exception) {
             exception.printStackTrace();
@@ -178,8 +247,12 @@ public class LevelStorage {
         return filePath;
     }
 
-    private static String getPredefinedResourceId(Integer index) {
-        return "game/level" + index.toString() + "." + LEVEL_FILE_EXTENSION;
+    static String getPredefinedResourceId(Integer index) {
+        return "game/" + getPredefinedFileName(index);
+    }
+
+    private static String getPredefinedFileName(Integer index) {
+        return "level" + index.toString() + "." + LEVEL_FILE_EXTENSION;
     }
 
     static private Integer levelCount;
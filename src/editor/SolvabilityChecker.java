@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package editor;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import game.Game;
+import game.LevelAnalyzer;
+
+/**
+ * The {@SolvabilityChecker} analyzes the edited level in the background. The
+ * analysis starts when the level hasn't been changed for a while, a running
+ * analysis is cancelled as soon as the level is changed again. The checker
+ * can be used again after it has been stopped. All methods have to be called
+ * on the event dispatch thread, the listener is called on it too.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class SolvabilityChecker {
+    public interface Listener {
+        // The verdict is null while the level is being checked
+        public void onSolvabilityChanged(LevelAnalyzer.Verdict verdict);
+    }
+
+    public SolvabilityChecker(Game game, Listener listener) {
+        this.game = game;
+        this.listener = listener;
+        debounceTimer = new Timer(DEBOUNCE_DELAY_MS, e -> startAnalysis());
+        debounceTimer.setRepeats(false);
+    }
+
+    // Has to be called after every change of the level
+    public void onLevelChanged() {
+        cancelAnalysis();
+        ++generation;
+        debounceTimer.restart();
+        listener.onSolvabilityChanged(null);
+    }
+
+    // Stops the analysis thread, it's started again by the next change
+    public void stop() {
+        debounceTimer.stop();
+        cancelAnalysis();
+        ++generation;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void startAnalysis() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "LevelAnalysis");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        // The level is copied here, the copy is analyzed on the executor thread
+        final LevelAnalyzer analyzer = new LevelAnalyzer(game);
+        final int analyzedGeneration = generation;
+        runningAnalysis = executor.submit(() -> {
+            try {
+                report(analyzedGeneration, analyzer.analyze(SOLVE_TIMEOUT_NANOS));
+            } catch (CancellationException e) {
+                // The level has been changed (see cancelAnalysis()), the checker is
+                // already waiting for the next analysis, so there is nothing to report
+                return;
+            } catch (RuntimeException e) {
+                // A failed analysis mustn't leave the level being checked forever
+                e.printStackTrace();
+                report(analyzedGeneration, LevelAnalyzer.Verdict.UNKNOWN);
+            }
+        });
+    }
+
+    // Delivers the verdict to the event dispatch thread
+    private void report(int analyzedGeneration, LevelAnalyzer.Verdict verdict) {
+        SwingUtilities.invokeLater(() -> {
+            // The level may have been changed while the result was being delivered
+            if (analyzedGeneration == generation) {
+                runningAnalysis = null;
+                listener.onSolvabilityChanged(verdict);
+            }
+        });
+    }
+
+    private void cancelAnalysis() {
+        if (runningAnalysis != null) {
+            runningAnalysis.cancel(true);
+            runningAnalysis = null;
+        }
+    }
+
+    private final Game game;
+    private final Listener listener;
+    private final Timer debounceTimer;
+    // It's created by the first analysis after the checker has been created or
+    // stopped
+    private ExecutorService executor = null;
+    private Future<?> runningAnalysis = null;
+    private int generation = 0;
+    private static final int DEBOUNCE_DELAY_MS = 300;
+    private static final long SOLVE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+}
@@ -15,10 +15,35 @@
  */
 package game;
 
-public class Cell {
+/**
+ * The {@Cell} describes a cell of the field. Cells aren't stored as objects:
+ * {@Field} keeps their types as bytes (see {@Type#getCode()}).
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public final class Cell {
     public enum Type {
-        WALL, FLOOR, NULL
+        WALL(1), FLOOR(2), NULL(0);
+
+        public byte getCode() {
+            return code;
+        }
+
+        public static Type fromCode(byte code) {
+            return (code >= 0 && code < BY_CODE.length) ? BY_CODE[code] : NULL;
+        }
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        private final byte code;
+        // Zero code is NULL, so a new array of codes contains empty cells
+        private static final Type[] BY_CODE = { NULL, WALL, FLOOR };
     }
 
-    public Type type = Type.NULL;
+    private Cell() {
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import utils.ImageStorage;
+
+/**
+ * The {@ChunkCache} keeps the static layer of a field (walls and floor) as
+ * images of CHUNK_SIZE x CHUNK_SIZE cells. A chunk is rendered when it's
+ * requested the first time and stays in the cache until the field under it is
+ * changed or it's evicted as the least recently used one. The cache isn't
+ * thread-safe: it has to be used by one thread at a time. Chunks are rendered
+ * in device pixels (the scale of the graphics configuration), so on HiDPI
+ * displays they are drawn without resampling.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class ChunkCache {
+    public static final int CHUNK_SIZE = 16;
+
+    // Configuration may be null (e.g. in headless mode)
+    public ChunkCache(Game game, Dimension cellSize, GraphicsConfiguration configuration, long memoryBudget,
+            int minChunkCount) {
+        this.game = game;
+        this.cellSize = (Dimension) cellSize.clone();
+        this.configuration = configuration;
+        scale = getDeviceScale(configuration);
+        final long chunkBytes = (long) (4L * CHUNK_SIZE * cellSize.width * CHUNK_SIZE * cellSize.height * scale
+                * scale);
+        maxChunkCount = (int) Math.max(minChunkCount, memoryBudget / Math.max(1, chunkBytes));
+        chunks = new LinkedHashMap<Long, Image>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Image> eldest) {
+                return size() > maxChunkCount;
+            }
+
+            private static final long serialVersionUID = 1L;
+        };
+    }
+
+    public Dimension getCellSize() {
+        return cellSize;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    // Returns scale of device pixels to user space ones (1.0 if the configuration
+    // is unknown)
+    public static double getDeviceScale(GraphicsConfiguration configuration) {
+        return (configuration != null) ? Math.max(1.0, configuration.getDefaultTransform().getScaleX()) : 1.0;
+    }
+
+    // Size of the chunk in user space (chunks at the right and bottom borders of
+    // the field may be smaller). The image of the chunk has to be drawn at this
+    // size
+    public Dimension getChunkSize(int chunkColumn, int chunkRow) {
+        final Dimension fieldSize = game.getFieldSize();
+        final int columnCount = Math.max(1, Math.min(CHUNK_SIZE, fieldSize.width - chunkColumn * CHUNK_SIZE));
+        final int rowCount = Math.max(1, Math.min(CHUNK_SIZE, fieldSize.height - chunkRow * CHUNK_SIZE));
+        return new Dimension(columnCount * cellSize.width, rowCount * cellSize.height);
+    }
+
+    // Returns image of the chunk (in device pixels), renders it if required
+    public Image getChunk(int chunkColumn, int chunkRow) {
+        final Long key = toKey(chunkColumn, chunkRow);
+        Image chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = renderChunk(chunkColumn, chunkRow);
+            chunks.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    // Renders chunks of the cells in advance (e.g. on a background thread before
+    // the cache is passed to a panel)
+    public void prerender(Rectangle cells) {
+        final Dimension fieldSize = game.getFieldSize();
+        final int lastChunkColumn = (Math.min(fieldSize.width, cells.x + cells.width) - 1) / CHUNK_SIZE;
+        final int lastChunkRow = (Math.min(fieldSize.height, cells.y + cells.height) - 1) / CHUNK_SIZE;
+        for (int chunkRow = cells.y / CHUNK_SIZE; chunkRow <= lastChunkRow; ++chunkRow) {
+            for (int chunkColumn = cells.x / CHUNK_SIZE; chunkColumn <= lastChunkColumn; ++chunkColumn) {
+                getChunk(chunkColumn, chunkRow);
+            }
+        }
+    }
+
+    public boolean hasChunk(int chunkColumn, int chunkRow) {
+        return chunks.containsKey(toKey(chunkColumn, chunkRow));
+    }
+
+    public void invalidateCell(int x, int y) {
+        chunks.remove(toKey(x / CHUNK_SIZE, y / CHUNK_SIZE));
+    }
+
+    public void invalidateAll() {
+        chunks.clear();
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    Game getGame() {
+        return game;
+    }
+
+    // Draws cell of the static layer
+    static void drawCell(Graphics2D graphics, int x, int y, int width, int height, Cell.Type type) {
+        if (type == Cell.Type.WALL) {
+            graphics.setColor(Color.RED);
+            graphics.fillRect(x, y, width, height);
+            drawImage(graphics, x, y, width, height, "wall.png");
+        } else if (type == Cell.Type.FLOOR) {
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(x, y, width, height);
+            drawImage(graphics, x, y, width, height, "floor.png");
+        }
+    }
+
+    private Image renderChunk(int chunkColumn, int chunkRow) {
+        final int firstColumn = chunkColumn * CHUNK_SIZE;
+        final int firstRow = chunkRow * CHUNK_SIZE;
+        final Dimension chunkSize = getChunkSize(chunkColumn, chunkRow);
+        final int columnCount = chunkSize.width / cellSize.width;
+        final int rowCount = chunkSize.height / cellSize.height;
+        final int width = (int) Math.ceil(chunkSize.width * scale);
+        final int height = (int) Math.ceil(chunkSize.height * scale);
+        final BufferedImage image = (configuration != null)
+                ? configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        final Field field = game.getField();
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.scale(scale, scale);
+        for (int row = 0; row < rowCount; ++row) {
+            for (int column = 0; column < columnCount; ++column) {
+                drawCell(graphics, column * cellSize.width, row * cellSize.height, cellSize.width, cellSize.height,
+                        field.getType(firstColumn + column, firstRow + row));
+            }
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private static void drawImage(Graphics2D graphics, int x, int y, int width, int height, String resourceId) {
+        // The sprite has a variant for the scale of the graphics, it's copied as is
+        Image image = ImageStorage.getSprite(resourceId, width, height, ImageStorage.getScale(graphics));
+        if (image != null) {
+            graphics.drawImage(image, x, y, null);
+        }
+    }
+
+    private static Long toKey(int chunkColumn, int chunkRow) {
+        return ((long) chunkColumn << 32) | (chunkRow & 0xFFFFFFFFL);
+    }
+
+    private final Game game;
+    private final Dimension cellSize;
+    private final GraphicsConfiguration configuration;
+    private final double scale;
+    private final int maxChunkCount;
+    private final LinkedHashMap<Long, Image> chunks;
+}
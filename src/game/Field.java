@@ -17,13 +17,13 @@
 package game;
 
 import java.awt.Dimension;
-import java.awt.Point;
-
-import utils.PointSet;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * The {@Field} is a logical game field that contains persistent (static)
- * objects
+ * objects. Types of cells are stored as codes in one byte array row by row
+ * (index of a cell is y * stride + x).
  *
  * @author olegshchepilov
  *
@@ -37,42 +37,123 @@ public class Field {
         setSize(size.width, size.height);
     }
 
-    public void setSize(int width, int height) {
-        final Cell[][] prevCells = cells;
-        final Dimension prevSize = getSize();
-        cells = new Cell[height][width];
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                if ((prevCells != null) && (x < prevSize.width) && (y < prevSize.height)) {
-                    cells[y][x] = prevCells[y][x];
-                } else {
-                    cells[y][x] = new Cell();
-                }
+    public void setSize(int newWidth, int newHeight) {
+        final byte[] prevCells = cells;
+        final int prevWidth = width;
+        final int prevHeight = height;
+        cells = new byte[newWidth * newHeight];
+        width = newWidth;
+        height = newHeight;
+        final int copiedRowCount = Math.min(prevHeight, newHeight);
+        if (prevWidth == newWidth) {
+            System.arraycopy(prevCells, 0, cells, 0, copiedRowCount * newWidth);
+        } else {
+            final int copiedRowLength = Math.min(prevWidth, newWidth);
+            for (int y = 0; y < copiedRowCount; ++y) {
+                System.arraycopy(prevCells, y * prevWidth, cells, y * newWidth, copiedRowLength);
             }
         }
     }
 
     public Dimension getSize() {
-        return (cells == null) ? new Dimension(0, 0) : new Dimension(cells[0].length, cells.length);
+        return new Dimension(width, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Distance between indexes of vertically adjacent cells
+    public int getStride() {
+        return width;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    public boolean isInside(int x, int y) {
+        return (x >= 0) && (y >= 0) && (x < width) && (y < height);
+    }
+
+    public int indexOf(int x, int y) {
+        return y * width + x;
+    }
+
+    public Cell.Type getType(int x, int y) {
+        return isInside(x, y) ? Cell.Type.fromCode(cells[indexOf(x, y)]) : Cell.Type.NULL;
     }
 
-    public Cell at(int x, int y) {
-        return cells[y][x];
+    public Cell.Type getType(int index) {
+        return Cell.Type.fromCode(cells[index]);
     }
 
-    public PointSet getCellCoordinatesByType(Cell.Type type) {
-        PointSet set = new PointSet();
-        for (int y = 0; y < cells.length; ++y) {
-            final Cell[] row = cells[y];
-            for (int x = 0; x < row.length; ++x) {
-                final Cell cell = row[x];
-                if (cell.type == type) {
-                    set.add(new Point(x, y));
-                }
+    public void setType(int x, int y, Cell.Type type) {
+        cells[indexOf(x, y)] = type.getCode();
+    }
+
+    public void setType(int index, Cell.Type type) {
+        cells[index] = type.getCode();
+    }
+
+    // Returns copy of the codes of all cells
+    public byte[] copyCells() {
+        return cells.clone();
+    }
+
+    // Sets the type of many cells at once
+    public void setTypes(int[] indexes, int count, Cell.Type type) {
+        final byte code = type.getCode();
+        for (int i = 0; i < count; ++i) {
+            cells[indexes[i]] = code;
+        }
+    }
+
+    // Returns indexes of cells that have the same type as the given cell and are
+    // connected with it horizontally or vertically (flood fill)
+    public int[] findRegion(int x, int y) {
+        if (!isInside(x, y)) {
+            return new int[0];
+        }
+        final int start = indexOf(x, y);
+        final byte code = cells[start];
+        final BitSet visited = new BitSet(cells.length);
+        // Found cells are the queue of the breadth-first search as well
+        int[] region = new int[64];
+        int count = 0;
+        region[count++] = start;
+        visited.set(start);
+        for (int head = 0; head < count; ++head) {
+            final int index = region[head];
+            final int column = index % width;
+            if (region.length - count < 4) {
+                region = Arrays.copyOf(region, 2 * region.length);
+            }
+            if (column > 0 && !visited.get(index - 1) && cells[index - 1] == code) {
+                visited.set(index - 1);
+                region[count++] = index - 1;
+            }
+            if (column < width - 1 && !visited.get(index + 1) && cells[index + 1] == code) {
+                visited.set(index + 1);
+                region[count++] = index + 1;
+            }
+            if (index >= width && !visited.get(index - width) && cells[index - width] == code) {
+                visited.set(index - width);
+                region[count++] = index - width;
+            }
+            if (index + width < cells.length && !visited.get(index + width) && cells[index + width] == code) {
+                visited.set(index + width);
+                region[count++] = index + width;
             }
         }
-        return set;
+        return Arrays.copyOf(region, count);
     }
 
-    private Cell[][] cells = null;
+    private byte[] cells = new byte[0];
+    private int width = 0;
+    private int height = 0;
 }
@@ -18,15 +18,16 @@ package game;
 
 import java.awt.Dimension;
 import java.awt.Point;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
-
-import utils.PointSet;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * The {@Game} class is logical representation of the game.
+ * The {@Game} class is logical representation of the game. It's changed by
+ * one thread at a time; other threads read it through {@GameSnapshot}s
+ * published after every change.
  * 
  * @author olegshchepilov
  *
@@ -37,8 +38,8 @@ final public class Game {
         UP, DOWN, LEFT, RIGHT
     }
 
-    public final static int MAX_FIELD_WIDTH = 40;
-    public final static int MAX_FIELD_HEIGHT = 40;
+    public final static int MAX_FIELD_WIDTH = 1000;
+    public final static int MAX_FIELD_HEIGHT = 1000;
 
     public interface SizeListener {
         public void onGameSizeChanged();
@@ -80,16 +81,57 @@ final public class Game {
             field = new Field();
         }
         field.setSize(newSize);
+        removeOutsideObject();
         if (prevSize == null || !prevSize.equals(field.getSize())) {
             for (SizeListener listener : sizeListeners) {
                 listener.onGameSizeChanged();
             }
         }
-        removeOutsideObject();
     }
 
-    public Cell getCell(int columnIndex, int rowIndex) {
-        return (field == null) ? null : field.at(columnIndex, rowIndex);
+    // Returns NULL type for cells outside the field
+    public Cell.Type getCellType(int columnIndex, int rowIndex) {
+        return (field == null) ? Cell.Type.NULL : field.getType(columnIndex, rowIndex);
+    }
+
+    public void setCellType(int columnIndex, int rowIndex, Cell.Type type) {
+        if (field != null && field.isInside(columnIndex, rowIndex)) {
+            field.setType(columnIndex, rowIndex, type);
+        }
+    }
+
+    // Changes many cells (indexes are row by row, see Field) at once: sets their
+    // type and puts boxes and target points on them or removes them. Indexes
+    // mustn't repeat. One snapshot is published for the whole change
+    public void setCells(int[] indexes, int count, Cell.Type type, boolean box, boolean targetPoint) {
+        if (field == null || count <= 0) {
+            return;
+        }
+        field.setTypes(indexes, count, type);
+        final int width = field.getWidth();
+        currentState = currentState.withBoxes(currentState.boxIndex.withCells(indexes, count, width, box));
+        initialState = currentState;
+        targetPoints = targetPoints.withCells(indexes, count, width, targetPoint);
+        publishSnapshot(null);
+    }
+
+    // Returns indexes of cells of the same type connected with the cell
+    public int[] findCellRegion(int columnIndex, int rowIndex) {
+        return (field == null) ? new int[0] : field.findRegion(columnIndex, rowIndex);
+    }
+
+    Field getField() {
+        return field;
+    }
+
+    // Replaces the whole level, it's used by loaders
+    void setLevel(Field newField, Point moleLocation, PointIndex boxes, PointIndex newTargetPoints) {
+        field = newField;
+        currentState = new GameState(moleLocation, boxes);
+        initialState = currentState;
+        targetPoints = newTargetPoints;
+        history.add(currentState);
+        publishSnapshot(null);
     }
 
     public Point getMolePosition() {
@@ -97,53 +139,91 @@ final public class Game {
     }
 
     public void setMolePosition(Point point) {
-        currentState.moleLocation = point;
+        if (Objects.equals(point, currentState.moleLocation)) {
+            return;
+        }
+        currentState = currentState.withMoleLocation((point == null) ? null : (Point) point.clone());
+        initialState = currentState;
+        publishSnapshot(null);
     }
 
+    // Returns unmodifiable list
     public List<Point> getBoxes() {
         return currentState.boxes;
     }
 
+    public boolean hasBox(int x, int y) {
+        return currentState.hasBox(x, y);
+    }
+
     public void setBoxPoint(Point point, boolean enable) {
-        setItem(currentState.boxes, point, enable);
+        final GameState newState = currentState.withBoxes(currentState.boxIndex.with(point, enable));
+        if (newState != currentState) {
+            currentState = newState;
+            initialState = currentState;
+            publishSnapshot(null);
+        }
     }
 
+    // Returns unmodifiable list
     public List<Point> getTargetPoints() {
-        return targetPoints;
+        return targetPoints.getPoints();
     }
 
-    public void setTargetPoint(Point point, boolean enable) {
-        setItem(targetPoints, point, enable);
+    public boolean hasTargetPoint(int x, int y) {
+        return targetPoints.contains(x, y);
     }
 
-    public byte[] getBinaryData() {
-        final Dimension fieldSize = getFieldSize();
-        byte[] result = new byte[(fieldSize.width + 1) * fieldSize.height];
-
-        for (int y = 0; y < fieldSize.height; ++y) {
-            for (int x = 0; x < fieldSize.width; ++x) {
-                result[(fieldSize.width + 1) * y + x] = getDataByte(x, y);
-            }
-            result[(fieldSize.width + 1) * y + fieldSize.width] = '\n';
+    public void setTargetPoint(Point point, boolean enable) {
+        final PointIndex points = targetPoints.with(point, enable);
+        if (points != targetPoints) {
+            targetPoints = points;
+            publishSnapshot(null);
         }
+    }
 
+    // Returns the latest published state. It's safe to call it from any thread
+    public GameSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public byte[] getBinaryData() {
+        byte[] result = new byte[LevelCodec.getEncodedSize(this)];
+        LevelCodec.encode(this, ByteBuffer.wrap(result));
         return result;
     }
 
+    // Identity of the level that doesn't depend on empty margins, rotations and
+    // reflections (see LevelHash). The level is hashed as it starts, so moves
+    // don't change it
+    public long getLevelHash() {
+        return LevelHash.compute(this);
+    }
+
     public byte getDataByte(int x, int y) {
-        Cell cell = getCell(x, y);
-        if ((cell == null) || (cell.type == Cell.Type.NULL)) {
+        return getDataByte(x, y, currentState);
+    }
+
+    // Data byte of the cell in the state the level starts from (moves and their
+    // undo/redo don't change it, editing the level does)
+    byte getInitialDataByte(int x, int y) {
+        return getDataByte(x, y, initialState);
+    }
+
+    private byte getDataByte(int x, int y, GameState state) {
+        final Cell.Type type = getCellType(x, y);
+        if (type == Cell.Type.NULL) {
             return CellDataByte.EMPTY.toByte();
         }
-        if (cell.type == Cell.Type.WALL) {
+        if (type == Cell.Type.WALL) {
             return CellDataByte.WALL.toByte();
         }
-        if ((currentState.moleLocation != null) && (currentState.moleLocation.x == x)
-                && (currentState.moleLocation.y == y)) {
+        if ((state.moleLocation != null) && (state.moleLocation.x == x)
+                && (state.moleLocation.y == y)) {
             return CellDataByte.MOLE.toByte();
         }
-        final boolean hasBox = currentState.boxes.contains(new Point(x, y));
-        final boolean hasTargetPoint = targetPoints.contains(new Point(x, y));
+        final boolean hasBox = state.hasBox(x, y);
+        final boolean hasTargetPoint = targetPoints.contains(x, y);
         if (hasBox && hasTargetPoint) {
             return CellDataByte.ACTIVE_BOX.toByte();
         } else if (hasBox) {
@@ -169,50 +249,58 @@ final public class Game {
 
         field = new Field();
         field.setSize(maxLineLength, lines.length);
-        currentState = new GameState();
+        Point moleLocation = null;
+        List<Point> boxes = new ArrayList<Point>();
+        List<Point> newTargetPoints = new ArrayList<Point>();
         for (int y = 0; y < lines.length; ++y) {
             String line = lines[y];
             for (int x = 0; x < maxLineLength; ++x) {
-                Cell cell = field.at(x, y);
+                Cell.Type type = Cell.Type.NULL;
                 final CellDataByte cellDataByte = CellDataByte.fromChar(line.charAt(x));
                 switch (cellDataByte) {
                     case EMPTY:
-                        cell.type = Cell.Type.NULL;
+                        type = Cell.Type.NULL;
                         break;
                     case WALL:
-                        cell.type = Cell.Type.WALL;
+                        type = Cell.Type.WALL;
                         break;
                     case EMPTY_FLOOR:
-                        cell.type = Cell.Type.FLOOR;
+                        type = Cell.Type.FLOOR;
                         break;
                     case MOLE:
-                        currentState.moleLocation = new Point(x, y);
-                        cell.type = Cell.Type.FLOOR;
+                        moleLocation = new Point(x, y);
+                        type = Cell.Type.FLOOR;
                         break;
                     case INACTIVE_BOX:
-                        currentState.boxes.add(new Point(x, y));
-                        cell.type = Cell.Type.FLOOR;
+                        boxes.add(new Point(x, y));
+                        type = Cell.Type.FLOOR;
                         break;
                     case ACTIVE_BOX:
-                        currentState.boxes.add(new Point(x, y));
-                        targetPoints.add(new Point(x, y));
-                        cell.type = Cell.Type.FLOOR;
+                        boxes.add(new Point(x, y));
+                        newTargetPoints.add(new Point(x, y));
+                        type = Cell.Type.FLOOR;
                         break;
                     case TARGET_POINT:
-                        targetPoints.add(new Point(x, y));
-                        cell.type = Cell.Type.FLOOR;
+                        newTargetPoints.add(new Point(x, y));
+                        type = Cell.Type.FLOOR;
                         break;
                     default:
-                        cell.type = Cell.Type.NULL;
+                        type = Cell.Type.NULL;
                 }
+                field.setType(x, y, type);
             }
         }
 
-        history.add(currentState);
-
+        setLevel(field, moleLocation, PointIndex.of(boxes), PointIndex.of(newTargetPoints));
         return true;
     }
 
+    // Loads the level from the position of the buffer to its limit (see
+    // LevelCodec). The buffer may be a mapped file
+    public boolean loadGame(ByteBuffer buffer) {
+        return LevelCodec.decode(buffer, this);
+    }
+
     public boolean loadGame(List<String> lines) {
         if (lines == null) {
             return false;
@@ -223,9 +311,8 @@ final public class Game {
     }
 
     public void checkIfUserWon() {
-        PointSet boxSet = new PointSet(currentState.boxes);
-        for (Point point : targetPoints) {
-            if (!boxSet.has(point)) {
+        for (Point point : targetPoints.getPoints()) {
+            if (!currentState.hasBox(point.x, point.y)) {
                 return;
             }
         }
@@ -251,6 +338,7 @@ final public class Game {
         if (boxChanged(prevState, state)) {
             --stepWithLoadCount;
         }
+        publishSnapshot(null);
         fireMoleMove();
         return true;
     }
@@ -273,6 +361,7 @@ final public class Game {
         if (boxChanged(prevState, state)) {
             ++stepWithLoadCount;
         }
+        publishSnapshot(null);
         fireMoleMove();
         return true;
     }
@@ -287,8 +376,14 @@ final public class Game {
 
     private Field field = null;
     private GameState currentState = new GameState();
+    // State of the level before the first move (see getLevelHash())
+    private GameState initialState = currentState;
     private StepHistory history = new StepHistory();
-    private List<Point> targetPoints = new ArrayList<Point>();
+    // Target points are replaced as a whole (copy-on-write), so published
+    // snapshots can share the index
+    private PointIndex targetPoints = PointIndex.EMPTY;
+    private final AtomicReference<GameSnapshot> snapshot = new AtomicReference<GameSnapshot>(
+            new GameSnapshot(currentState, targetPoints, 0, 0, null));
     private List<SizeListener> sizeListeners = new ArrayList<SizeListener>();
     private List<ActionListener> actionListeners = new ArrayList<ActionListener>();
     private int stepCount = 0;
@@ -326,7 +421,6 @@ final public class Game {
     }
 
     private boolean canMoveMole(MoleMovementDirection direction) {
-        PointSet floor = field.getCellCoordinatesByType(Cell.Type.FLOOR);
         Point offset = convertDirectionToPoint(direction);
         if (offset == null) {
             return false;
@@ -335,30 +429,21 @@ final public class Game {
         // Check floor cell
         Point newMoleLocation = new Point(currentState.moleLocation.x + offset.x,
                 currentState.moleLocation.y + offset.y);
-        if (!floor.has(newMoleLocation)) {
+        if (field.getType(newMoleLocation.x, newMoleLocation.y) != Cell.Type.FLOOR) {
             return false;
         }
 
         // Do we have a box on this cell?
-        boolean hasBox = false;
-        for (int index = 0; index < currentState.boxes.size(); ++index) {
-            Point box = currentState.boxes.get(index);
-            if (box.equals(newMoleLocation)) {
-                hasBox = true;
-                break;
-            }
-        }
-        if (!hasBox) {
+        if (!currentState.hasBox(newMoleLocation.x, newMoleLocation.y)) {
             return true;
         }
 
         // Can the mole move the box
         Point newBoxLocation = new Point(newMoleLocation.x + offset.x, newMoleLocation.y + offset.y);
-        if (!floor.has(newBoxLocation)) {
+        if (field.getType(newBoxLocation.x, newBoxLocation.y) != Cell.Type.FLOOR) {
             return false;
         }
-        PointSet boxSet = new PointSet(currentState.boxes);
-        if (boxSet.has(newBoxLocation)) {
+        if (currentState.hasBox(newBoxLocation.x, newBoxLocation.y)) {
             return false;
         }
 
@@ -371,37 +456,27 @@ final public class Game {
         }
         ++stepCount;
         Point offset = convertDirectionToPoint(direction);
-        Point newMoleLocation = new Point(currentState.moleLocation.x + offset.x,
-                currentState.moleLocation.y + offset.y);
-
-        for (int index = 0; index < currentState.boxes.size(); ++index) {
-            Point box = currentState.boxes.get(index);
-            if (box.equals(newMoleLocation)) {
-                box.translate(offset.x, offset.y);
-                ++stepWithLoadCount;
-                break;
-            }
+        final Point prevMoleLocation = currentState.moleLocation;
+        Point newMoleLocation = new Point(prevMoleLocation.x + offset.x, prevMoleLocation.y + offset.y);
+
+        GameState newState = currentState.withMoleLocation(newMoleLocation);
+        Point boxFrom = null;
+        Point boxTo = null;
+        if (currentState.hasBox(newMoleLocation.x, newMoleLocation.y)) {
+            boxFrom = newMoleLocation;
+            boxTo = new Point(newMoleLocation.x + offset.x, newMoleLocation.y + offset.y);
+            newState = newState.withBoxMoved(boxFrom, boxTo);
+            ++stepWithLoadCount;
         }
 
-        currentState.moleLocation = newMoleLocation;
+        currentState = newState;
         history.add(currentState);
+        publishSnapshot(new GameSnapshot.Move(prevMoleLocation, boxFrom, boxTo));
         fireMoleMove();
 
         checkIfUserWon();
     }
 
-    private static void setItem(List<Point> points, Point point, boolean enable) {
-        final boolean contained = points.contains(point);
-        if (contained == enable) {
-            return;
-        }
-        if (enable) {
-            points.add(point);
-        } else {
-            points.remove(point);
-        }
-    }
-
     static boolean isOutside(Dimension fieldSize, Point point) {
         if (point == null) {
             return false;
@@ -411,11 +486,22 @@ final public class Game {
 
     private void removeOutsideObject() {
         final Dimension fieldSize = getFieldSize();
-        if (isOutside(fieldSize, currentState.moleLocation)) {
-            currentState.moleLocation = null;
+        GameState newState = currentState;
+        if (isOutside(fieldSize, newState.moleLocation)) {
+            newState = newState.withMoleLocation(null);
         }
-        currentState.boxes.removeIf(box -> isOutside(fieldSize, box));
-        targetPoints.removeIf(point -> isOutside(fieldSize, point));
+        newState = newState.withBoxes(newState.boxIndex.withoutOutside(fieldSize));
+        final PointIndex points = targetPoints.withoutOutside(fieldSize);
+        if (newState != currentState || points != targetPoints) {
+            currentState = newState;
+            initialState = currentState;
+            targetPoints = points;
+            publishSnapshot(null);
+        }
+    }
+
+    private void publishSnapshot(GameSnapshot.Move lastMove) {
+        snapshot.set(new GameSnapshot(currentState, targetPoints, stepCount, stepWithLoadCount, lastMove));
     }
 
     private void fireMoleMove() {
@@ -434,12 +520,10 @@ final public class Game {
         if (state1 == null || state2 == null) {
             return true;
         }
-        HashSet<Point> boxSet1 = new HashSet<Point>(state1.boxes);
-        HashSet<Point> boxSet2 = new HashSet<Point>(state2.boxes);
-        return !Objects.equals(boxSet1, boxSet2);
+        return !state1.boxIndex.hasSamePoints(state2.boxIndex);
     }
 
-    private enum CellDataByte {
+    enum CellDataByte {
         UNDEFINED('\n'), EMPTY('E'), WALL('W'), EMPTY_FLOOR('F'), MOLE('M'), INACTIVE_BOX('B'), ACTIVE_BOX('A'),
         TARGET_POINT('T');
 
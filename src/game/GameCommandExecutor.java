@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@GameCommandExecutor} changes a game on its own thread. Commands are
+ * put into a bounded queue (e.g. from the event dispatch thread); readers get
+ * the result through snapshots that the game publishes.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class GameCommandExecutor implements Runnable {
+    public interface Listener {
+        // Calls on the executor thread
+        public void onGameSnapshotPublished(GameSnapshot snapshot);
+    }
+
+    public static final class Command {
+        private enum Type {
+            MOVE, UNDO, REDO
+        }
+
+        public static Command move(Game.MoleMovementDirection direction) {
+            return new Command(Type.MOVE, direction);
+        }
+
+        public static Command undo() {
+            return new Command(Type.UNDO, null);
+        }
+
+        public static Command redo() {
+            return new Command(Type.REDO, null);
+        }
+
+        private Command(Type type, Game.MoleMovementDirection direction) {
+            this.type = type;
+            this.direction = direction;
+        }
+
+        // Repeated undo/redo keystrokes are executed as one command
+        private boolean coalesce(Command command) {
+            if (type == Type.MOVE || type != command.type) {
+                return false;
+            }
+            ++count;
+            return true;
+        }
+
+        private final Type type;
+        private final Game.MoleMovementDirection direction;
+        private int count = 1;
+    }
+
+    public GameCommandExecutor(Game game, Listener listener) {
+        this.game = game;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        final Thread newThread = new Thread(this, "GameLogic");
+        newThread.setDaemon(true);
+        thread = newThread;
+        newThread.start();
+    }
+
+    // Waits for the running command and drops all commands that haven't been
+    // executed yet. The game isn't changed by the executor after that, so it can
+    // be passed to another owner
+    public synchronized void stop() {
+        final Thread oldThread = thread;
+        if (oldThread == null) {
+            return;
+        }
+        thread = null;
+        oldThread.interrupt();
+        // A listener may stop the executor from its own thread, it exits after the
+        // current command then
+        if (oldThread != Thread.currentThread()) {
+            boolean interrupted = false;
+            while (oldThread.isAlive()) {
+                try {
+                    oldThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            queue.clear();
+            pendingCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns false if the queue is full or the executor is stopped and the
+    // command has been rejected
+    public boolean submit(Command command) {
+        lock.lock();
+        try {
+            if (thread == null) {
+                return false;
+            }
+            final Command last = queue.peekLast();
+            if (last != null && last.coalesce(command)) {
+                return true;
+            }
+            if (queue.size() >= QUEUE_CAPACITY) {
+                return false;
+            }
+            queue.addLast(command);
+            ++pendingCount;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns true if there are no queued commands and no command is running
+    public boolean isIdle() {
+        lock.lock();
+        try {
+            return pendingCount == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void run() {
+        // A stopped thread exits even if the executor has been started again
+        while (thread == Thread.currentThread()) {
+            Command command = null;
+            lock.lock();
+            try {
+                while (queue.isEmpty()) {
+                    notEmpty.await();
+                }
+                if (thread != Thread.currentThread()) {
+                    break;
+                }
+                command = queue.pollFirst();
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                execute(command);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                lock.lock();
+                // The counter is reset if the executor is stopped by the command
+                pendingCount = Math.max(0, pendingCount - 1);
+                lock.unlock();
+            }
+        }
+    }
+
+    private void execute(Command command) {
+        final GameSnapshot prevSnapshot = game.getSnapshot();
+        switch (command.type) {
+            case MOVE:
+                game.tryToMoveMole(command.direction);
+                break;
+            case UNDO:
+                for (int i = 0; i < command.count && game.undo(); ++i) {
+                }
+                break;
+            case REDO:
+                for (int i = 0; i < command.count && game.redo(); ++i) {
+                }
+                break;
+        }
+        final GameSnapshot snapshot = game.getSnapshot();
+        if (snapshot != prevSnapshot && listener != null) {
+            listener.onGameSnapshotPublished(snapshot);
+        }
+    }
+
+    private final Game game;
+    private final Listener listener;
+    // The current logic thread (null if the executor is stopped)
+    private volatile Thread thread = null;
+    private final ArrayDeque<Command> queue = new ArrayDeque<Command>();
+    private int pendingCount = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private static final int QUEUE_CAPACITY = 32;
+}
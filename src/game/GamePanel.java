@@ -18,13 +18,19 @@ package game;
 
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.font.GlyphVector;
+import java.util.concurrent.TimeUnit;
 
+import javax.swing.SwingUtilities;
+
+import common.ApplicationDefines;
 import common.PanelBar;
+import common.controls.CounterLabelControl;
 import common.controls.LabelControl;
 import common.controls.LabelControl.Alignment;
 import common.controls.NumericLeftRightControl;
@@ -41,14 +47,20 @@ import utils.SystemUtils;
  *
  */
 
-public class GamePanel extends GamePanelBase implements KeyListener, Game.ActionListener {
+public class GamePanel extends GamePanelBase
+        implements KeyListener, Game.ActionListener, GameCommandExecutor.Listener, RenderLoop.Client {
     public interface Callback {
         public void onGamePanelCommandExit(Game currentGame);
 
-        public void onGamePanelCommandExitOnVictory();
+        public void onGamePanelCommandExitOnVictory(Game wonGame);
     }
 
     public GamePanel(Game passedGame, Callback gamePanelCallback) {
+        this(passedGame, null, gamePanelCallback);
+    }
+
+    // The static layer may be prepared in advance (see prepareChunkCache)
+    public GamePanel(Game passedGame, ChunkCache preparedChunkCache, Callback gamePanelCallback) {
         topStatusBarHeight = stepCountValueLabel.getIdealHeight() + 2 * PADDING;
         bottomStatusBarHeight = exitHotKeyValueLabel.getIdealHeight() + 2 * PADDING;
 
@@ -56,20 +68,62 @@ public class GamePanel extends GamePanelBase implements KeyListener, Game.Action
 
         callback = gamePanelCallback;
         setGame(passedGame);
+        setPreparedChunkCache(preparedChunkCache);
         passedGame.addActionListener(this);
         passedGame.checkIfUserWon();
 
         initControls();
+
+        executor = new GameCommandExecutor(passedGame, this);
+        displayedSnapshot = passedGame.getSnapshot();
+        if (ApplicationDefines.activeRendering) {
+            renderLoop = new RenderLoop(this, this, ApplicationDefines.TARGET_FPS);
+        }
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        executor.start();
+        if (renderLoop != null) {
+            renderLoop.start();
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (renderLoop != null) {
+            renderLoop.stop();
+        }
+        executor.stop();
+        super.removeNotify();
     }
 
     @Override
     public void paintComponent(Graphics graphics) {
+        final long paintStartTime = System.nanoTime();
+        adoptLatestSnapshot(paintStartTime);
         super.paintComponent(graphics);
 
+        // The mole is shown when the panel is laid out, wheel scrolls are kept
+        // until the mole moves (see adoptLatestSnapshot)
+        if (moleScrollPending) {
+            moleScrollPending = false;
+            scrollToCell(displayedSnapshot.getMolePosition());
+        }
         drawField(graphics);
         if (userWon) {
             drawVictoryPlate(graphics);
         }
+
+        final long paintEndTime = System.nanoTime();
+        renderStatistics.paintTimes.record(paintEndTime - paintStartTime);
+        if (keyPressTime != 0 && displayedSnapshotChanged) {
+            renderStatistics.inputLatencies.record(paintEndTime - keyPressTime);
+            keyPressTime = 0;
+        }
+        displayedSnapshotChanged = false;
+        drawRenderStatistics(graphics);
     }
 
     @Override
@@ -83,59 +137,109 @@ public class GamePanel extends GamePanelBase implements KeyListener, Game.Action
 
     @Override
     public void keyPressed(KeyEvent e) {
-        boolean haveChanges = false;
+        // Input latency is measured from the first key press that hasn't been shown
+        // yet. Presses that change nothing (e.g. against a wall) are forgotten later
+        final long now = System.nanoTime();
+        if (keyPressTime == 0 || now - keyPressTime > MAX_INPUT_LATENCY_NANOS) {
+            keyPressTime = now;
+        }
+        final Game.MoleMovementDirection direction = convertKeyToDirection(e.getKeyCode());
+        if (direction != null) {
+            if (renderLoop != null) {
+                // The render loop moves the mole at its own pace, so auto-repeated key
+                // presses just confirm the direction and don't pile up
+                pendingDirection = direction;
+                heldDirection = direction;
+            } else {
+                executor.submit(GameCommandExecutor.Command.move(direction));
+            }
+        }
         switch (e.getKeyCode()) {
-            case KeyEvent.VK_UP:
-                haveChanges = getGame().tryToMoveMole(Game.MoleMovementDirection.UP);
-                break;
-            case KeyEvent.VK_DOWN:
-                haveChanges = getGame().tryToMoveMole(Game.MoleMovementDirection.DOWN);
-                break;
-            case KeyEvent.VK_LEFT:
-                haveChanges = getGame().tryToMoveMole(Game.MoleMovementDirection.LEFT);
-                break;
-            case KeyEvent.VK_RIGHT:
-                haveChanges = getGame().tryToMoveMole(Game.MoleMovementDirection.RIGHT);
-                break;
             case KeyEvent.VK_ENTER:
                 if (userWon && callback != null) {
-                    callback.onGamePanelCommandExitOnVictory();
+                    exit();
                 }
                 break;
             case KeyEvent.VK_ESCAPE:
                 if (callback != null) {
-                    if (userWon) {
-                        callback.onGamePanelCommandExitOnVictory();
-                    } else {
-                        callback.onGamePanelCommandExit(getGame());
-                    }
+                    exit();
                 }
                 break;
+            case KeyEvent.VK_F3:
+                renderStatistics.visible = !renderStatistics.visible;
+                repaint();
+                break;
+            case KeyEvent.VK_F4:
+                setRenderQuality(getRenderQuality().next());
+                break;
             default:
-                haveChanges = processPlatformDepended(e);
+                processPlatformDepended(e);
         }
-        if (haveChanges) {
-            revalidate();
-            repaint();
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        if (convertKeyToDirection(e.getKeyCode()) == heldDirection) {
+            heldDirection = null;
         }
+    }
 
+    @Override
+    public void onResize() {
+        super.onResize();
+        moleScrollPending = true;
     }
 
+    // RenderLoop.Client
     @Override
-    public void keyReleased(KeyEvent e) {
+    public boolean onFrame(long frameTimeNanos) {
+        boolean haveChanges = adoptLatestSnapshot(frameTimeNanos);
+        if (moveAnimation != null) {
+            moveAnimation.progress = Math.min(1.0,
+                    (double) (frameTimeNanos - moveAnimationStartTime) / (double) MOVE_INTERVAL_NANOS);
+            if (moveAnimation.progress >= 1.0) {
+                moveAnimation = null;
+            }
+            haveChanges = true;
+        }
+
+        final Game.MoleMovementDirection direction = (pendingDirection != null) ? pendingDirection
+                : heldDirection;
+        // The next move is requested only when the previous one has been executed
+        if ((direction != null) && (frameTimeNanos - nextMoveTime >= 0) && executor.isIdle()) {
+            pendingDirection = null;
+            executor.submit(GameCommandExecutor.Command.move(direction));
+            nextMoveTime = frameTimeNanos + MOVE_INTERVAL_NANOS;
+        }
+        return haveChanges;
     }
 
+    // Game.ActionListener (calls on the executor thread)
     @Override
     public void onGameMoleMove() {
-        stepCountValueLabel.setText(Integer.toString(getGame().getStepCount()));
-        stepCountWithLoadValueLabel.setText(Integer.toString(getGame().getStepWithLoadCount()));
-        repaint();
+        // Step counters are updated from published snapshots
     }
 
     @Override
     public void onGameUserWon() {
-        userWon = true;
-        repaint();
+        SwingUtilities.invokeLater(() -> {
+            userWon = true;
+            repaint();
+        });
+    }
+
+    // GameCommandExecutor.Listener
+    @Override
+    public void onGameSnapshotPublished(GameSnapshot snapshot) {
+        // The render loop polls snapshots itself
+        if (renderLoop == null) {
+            repaint();
+        }
+    }
+
+    @Override
+    protected GameSnapshot getSnapshot() {
+        return displayedSnapshot;
     }
 
     @Override
@@ -150,7 +254,7 @@ public class GamePanel extends GamePanelBase implements KeyListener, Game.Action
     }
 
     private void drawVictoryPlate(Graphics graphics) {
-        final Rectangle fieldArea = renderDetails.fieldArea;
+        final Rectangle fieldArea = (Rectangle) renderDetails.fieldArea.clone();
         RectangleUtils.deflateRect(fieldArea, fieldArea.width / 4, fieldArea.height / 4);
         graphics.setColor(Color.GREEN);
         final int radius = (fieldArea.width + fieldArea.height) / 10;
@@ -158,38 +262,95 @@ public class GamePanel extends GamePanelBase implements KeyListener, Game.Action
 
         graphics.setColor(Color.WHITE);
 
-        Font currentFont = getFont();
-        Font newFont = new Font(currentFont.getFontName(), currentFont.getStyle(), radius);
-        graphics.setFont(newFont);
-        final String text = L10n.get(L10n.Id.VICTORY);
-        FontMetrics metrics = graphics.getFontMetrics();
-        final int fontHeight = FontUtils.getFontHeight(graphics.getFont());
-        final int textWidth = metrics.stringWidth(text);
+        // The font is derived only when the size of the plate is changed, the text
+        // is laid out once for it
+        final Font currentFont = getFont();
+        if (victoryFont == null || victoryFont.getSize() != radius || victoryBaseFont != currentFont) {
+            victoryBaseFont = currentFont;
+            victoryFont = new Font(currentFont.getFontName(), currentFont.getStyle(), radius);
+        }
+        Graphics2D graphics2d = (Graphics2D) graphics;
+        final GlyphVector text = FontUtils.getGlyphVector(victoryFont, L10n.get(L10n.Id.VICTORY),
+                graphics2d.getFontRenderContext());
+        final int fontHeight = FontUtils.getFontHeight(victoryFont);
+        final int textWidth = (int) text.getLogicalBounds().getWidth();
         final int x = fieldArea.x + (fieldArea.width - textWidth) / 2;
         final int y = fieldArea.y + (fieldArea.height + fontHeight) / 2;
-        graphics.drawString(text, x, y);
-        graphics.setFont(currentFont);
+        graphics2d.drawGlyphVector(text, x, y);
+    }
+
+    // Takes the latest snapshot published by the game. Returns true if it differs
+    // from the displayed one
+    private boolean adoptLatestSnapshot(long frameTimeNanos) {
+        final GameSnapshot latest = getGame().getSnapshot();
+        if (latest == displayedSnapshot) {
+            return false;
+        }
+        displayedSnapshot = latest;
+        displayedSnapshotChanged = true;
+        // The view follows the mole
+        scrollToCell(latest.getMolePosition());
+        moveAnimation = null;
+        // With passive rendering a few snapshots may be skipped, so the last move
+        // isn't necessarily the one from the displayed state
+        final GameSnapshot.Move lastMove = latest.getLastMove();
+        if ((renderLoop != null) && (lastMove != null)) {
+            moveAnimation = new MoveAnimation();
+            moveAnimation.moleFrom = lastMove.moleFrom;
+            moveAnimation.boxFrom = lastMove.boxFrom;
+            moveAnimation.boxTo = lastMove.boxTo;
+            moveAnimationStartTime = frameTimeNanos;
+        }
+        stepCountValueLabel.setValue(latest.getStepCount());
+        stepCountWithLoadValueLabel.setValue(latest.getStepWithLoadCount());
+        return true;
+    }
+
+    // The game is passed to the callback when no command can change it anymore
+    private void exit() {
+        executor.stop();
+        if (userWon) {
+            callback.onGamePanelCommandExitOnVictory(getGame());
+        } else {
+            callback.onGamePanelCommandExit(getGame());
+        }
+    }
+
+    private static Game.MoleMovementDirection convertKeyToDirection(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_UP:
+                return Game.MoleMovementDirection.UP;
+            case KeyEvent.VK_DOWN:
+                return Game.MoleMovementDirection.DOWN;
+            case KeyEvent.VK_LEFT:
+                return Game.MoleMovementDirection.LEFT;
+            case KeyEvent.VK_RIGHT:
+                return Game.MoleMovementDirection.RIGHT;
+            default:
+                return null;
+        }
     }
 
-    private boolean processPlatformDepended(KeyEvent e) {
+    // Changes come with the next published snapshot
+    private void processPlatformDepended(KeyEvent e) {
         if (SystemUtils.getOSFamily() == SystemUtils.OSFamily.MACOS) {
             if (e.getKeyCode() == KeyEvent.VK_Z) {
                 final boolean commandPressed = e.isMetaDown();
                 final boolean shiftPressed = e.isShiftDown();
                 if (commandPressed) {
-                    return shiftPressed ? getGame().redo() : getGame().undo();
+                    executor.submit(
+                            shiftPressed ? GameCommandExecutor.Command.redo() : GameCommandExecutor.Command.undo());
                 }
             }
         } else {
             if (e.getKeyCode() == KeyEvent.VK_Z && e.isControlDown()) {
-                return getGame().undo();
+                executor.submit(GameCommandExecutor.Command.undo());
             }
             if (e.getKeyCode() == KeyEvent.VK_Y && e.isControlDown()) {
-                return getGame().redo();
+                executor.submit(GameCommandExecutor.Command.redo());
             }
 
         }
-        return false;
     }
 
     private void initControls() {
@@ -226,13 +387,33 @@ public class GamePanel extends GamePanelBase implements KeyListener, Game.Action
     }
 
     private static int STEP_VALUE_COUNT_LABEL_WIDTH = 50;
+    // Held arrow key moves the mole once per interval, the move is animated
+    // during the same interval
+    private static final long MOVE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(120);
     private boolean userWon = false;
+    private Font victoryFont = null;
+    // Font of the panel the victory font has been derived from
+    private Font victoryBaseFont = null;
+    // Game logic runs on the executor thread, the panel draws its snapshots
+    private GameCommandExecutor executor = null;
+    private GameSnapshot displayedSnapshot = null;
+    private boolean displayedSnapshotChanged = false;
+    // The mole has to be scrolled into view on the next paint (e.g. the first one)
+    private boolean moleScrollPending = true;
+    private long keyPressTime = 0;
+    private static final long MAX_INPUT_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Active rendering (it's null if the panel is painted by Swing only)
+    private RenderLoop renderLoop = null;
+    private Game.MoleMovementDirection pendingDirection = null;
+    private Game.MoleMovementDirection heldDirection = null;
+    private long nextMoveTime = System.nanoTime();
+    private long moveAnimationStartTime = 0;
     private Callback callback = null;
     // Top status bar
     private int topStatusBarHeight = NumericLeftRightControl.getImageHeight() + 2 * PADDING;
     private PanelBar topStatusBar = new PanelBar(true);
-    private LabelControl stepCountValueLabel = new LabelControl("0", Alignment.LEFT, STEP_VALUE_COUNT_LABEL_WIDTH);
-    private LabelControl stepCountWithLoadValueLabel = new LabelControl("0", Alignment.LEFT,
+    private CounterLabelControl stepCountValueLabel = new CounterLabelControl(0, STEP_VALUE_COUNT_LABEL_WIDTH);
+    private CounterLabelControl stepCountWithLoadValueLabel = new CounterLabelControl(0,
             STEP_VALUE_COUNT_LABEL_WIDTH);
     // Bottom status bar
     private int bottomStatusBarHeight = NumericLeftRightControl.getImageHeight() + 2 * PADDING;
@@ -20,18 +20,20 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.RenderingHints;
-import java.util.ArrayList;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import common.PanelBase;
 import utils.ImageStorage;
 import utils.Margins;
-import utils.PointSet;
 import utils.RectangleUtils;
+import utils.TimingRecorder;
 
 /**
  * The {@GamePanelBase} is base class for game panels (GamePanel and
@@ -41,7 +43,7 @@ import utils.RectangleUtils;
  *
  */
 
-public class GamePanelBase extends PanelBase implements Game.SizeListener
+public class GamePanelBase extends PanelBase implements Game.SizeListener, MouseWheelListener
 
 {
     public GamePanelBase() {
@@ -57,6 +59,7 @@ public class GamePanelBase extends PanelBase implements Game.SizeListener
     @Override
     public void onGameSizeChanged() {
         renderDetails = null;
+        chunkCache = null;
         repaint();
     }
 
@@ -65,6 +68,9 @@ public class GamePanelBase extends PanelBase implements Game.SizeListener
             return;
         }
         game = newGame;
+        renderDetails = null;
+        chunkCache = null;
+        resetAutoQuality();
         if (game == null) {
             return;
         }
@@ -75,10 +81,53 @@ public class GamePanelBase extends PanelBase implements Game.SizeListener
         return game;
     }
 
+    // Area of the panel where a field can be drawn. A level can be prepared for a
+    // panel of the same size (see prepareChunkCache)
+    public Rectangle getAvailableArea() {
+        return calcAvailableRect();
+    }
+
+    // Creates static layer of the game as it would be shown in the available area
+    // and renders its chunks visible at the start. It doesn't touch any panel, so
+    // it can be called on any thread. Returns null if the field can't be shown
+    public static ChunkCache prepareChunkCache(Game game, Rectangle availableArea,
+            GraphicsConfiguration configuration) {
+        final Dimension fieldSize = game.getFieldSize();
+        if (availableArea.isEmpty() || fieldSize.width <= 0 || fieldSize.height <= 0) {
+            return null;
+        }
+        final FieldLayout layout = calcFieldLayout(availableArea, fieldSize);
+        final ChunkCache cache = createChunkCache(game, layout.cellSize, layout.fieldArea, configuration);
+        // A new field is shown from its top left corner
+        cache.prerender(new Rectangle(0, 0, layout.fieldArea.width / layout.cellSize.width + 1,
+                layout.fieldArea.height / layout.cellSize.height + 1));
+        return cache;
+    }
+
     public void setMargins(Margins margins) {
         this.margins = margins;
     }
 
+    @Override
+    public MouseWheelListener mouseWheelListener() {
+        return this;
+    }
+
+    // Scrolls the field if it doesn't fit the panel (Shift scrolls horizontally)
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        if (game == null) {
+            return;
+        }
+        renderIfRequired();
+        final int rotation = e.getWheelRotation() * SCROLL_STEP_CELL_COUNT;
+        final boolean scrolled = e.isShiftDown() ? scrollBy(rotation * renderDetails.cellSize.width, 0)
+                : scrollBy(0, rotation * renderDetails.cellSize.height);
+        if (scrolled) {
+            repaint();
+        }
+    }
+
     protected Point findCellUnderPoint(Point point) {
         if (game == null) {
             return null;
@@ -91,11 +140,11 @@ public class GamePanelBase extends PanelBase implements Game.SizeListener
         if (fieldSize.width <= 0 || fieldSize.height <= 0) {
             return null;
         }
-        point.x -= renderDetails.fieldArea.x;
-        point.y -= renderDetails.fieldArea.y;
+        point.x += scrollOffset.x - renderDetails.fieldArea.x;
+        point.y += scrollOffset.y - renderDetails.fieldArea.y;
 
-        final int columnIndex = (int) ((double) point.x / (double) renderDetails.fieldArea.width * fieldSize.width);
-        final int rowIndex = (int) ((double) point.y / (double) renderDetails.fieldArea.height * fieldSize.height);
+        final int columnIndex = point.x / renderDetails.cellSize.width;
+        final int rowIndex = point.y / renderDetails.cellSize.height;
 
         if (columnIndex < 0 || columnIndex >= fieldSize.width) {
             return null;
@@ -106,54 +155,180 @@ public class GamePanelBase extends PanelBase implements Game.SizeListener
         return new Point(columnIndex, rowIndex);
     }
 
+    // Returns the state that has to be drawn. Inheritors may hold back the latest
+    // snapshot (e.g. until the next frame)
+    protected GameSnapshot getSnapshot() {
+        return game.getSnapshot();
+    }
+
+    public RenderQuality getRenderQuality() {
+        return renderQuality;
+    }
+
+    public void setRenderQuality(RenderQuality renderQuality) {
+        this.renderQuality = renderQuality;
+        resetAutoQuality();
+        repaint();
+    }
+
+    // Returns the profile the field is drawn with (never AUTO)
+    public RenderQuality getEffectiveRenderQuality() {
+        return (renderQuality == RenderQuality.AUTO) ? autoQuality : renderQuality;
+    }
+
     protected void drawField(Graphics graphics) {
         if (game == null) {
             return;
         }
+        final long drawStartTime = System.nanoTime();
         renderIfRequired();
+        // Chunks are rendered in device pixels, so they are rendered again when the
+        // panel is moved to a display of another scale
+        final GraphicsConfiguration configuration = getGraphicsConfiguration();
+        if (chunkCache.getScale() != ChunkCache.getDeviceScale(configuration)) {
+            chunkCache = createChunkCache(game, renderDetails.cellSize, renderDetails.fieldArea, configuration);
+        }
+        renderStatistics.tilesBlitted = 0;
 
-        RenderingHints renderingHints = new RenderingHints(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-        renderingHints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-
-        Graphics2D graphics2d = (Graphics2D) graphics;
-        graphics2d.setRenderingHints(renderingHints);
-
-        // -- Background
         final Dimension fieldSize = game.getFieldSize();
-        for (int rowIndex = 0; rowIndex < fieldSize.height; ++rowIndex) {
-            for (int columnIndex = 0; columnIndex < fieldSize.width; ++columnIndex) {
-                Rectangle cellRect = calcCellRect(columnIndex, rowIndex);
-                drawCell(graphics2d, cellRect, game.getCell(columnIndex, rowIndex));
+        final Rectangle visibleCells = calcVisibleCells();
+        if (visibleCells.isEmpty()) {
+            return;
+        }
+        Graphics2D graphics2d = (Graphics2D) graphics.create();
+        getEffectiveRenderQuality().apply(graphics2d);
+        graphics2d.clipRect(renderDetails.fieldArea.x, renderDetails.fieldArea.y, renderDetails.fieldArea.width,
+                renderDetails.fieldArea.height);
+
+        // -- Background (cached chunks that intersect the viewport)
+        final int firstChunkColumn = visibleCells.x / ChunkCache.CHUNK_SIZE;
+        final int firstChunkRow = visibleCells.y / ChunkCache.CHUNK_SIZE;
+        final int lastChunkColumn = (visibleCells.x + visibleCells.width - 1) / ChunkCache.CHUNK_SIZE;
+        final int lastChunkRow = (visibleCells.y + visibleCells.height - 1) / ChunkCache.CHUNK_SIZE;
+        for (int chunkRow = firstChunkRow; chunkRow <= lastChunkRow; ++chunkRow) {
+            for (int chunkColumn = firstChunkColumn; chunkColumn <= lastChunkColumn; ++chunkColumn) {
+                final Rectangle chunkRect = calcCellRect(chunkColumn * ChunkCache.CHUNK_SIZE,
+                        chunkRow * ChunkCache.CHUNK_SIZE);
+                final Dimension chunkSize = chunkCache.getChunkSize(chunkColumn, chunkRow);
+                graphics2d.drawImage(chunkCache.getChunk(chunkColumn, chunkRow), chunkRect.x, chunkRect.y,
+                        chunkSize.width, chunkSize.height, null);
+                ++renderStatistics.tilesBlitted;
             }
         }
 
         // -- Foreground
-        Point molePosition = game.getMolePosition();
-        List<Point> boxes = new ArrayList<Point>(game.getBoxes());
-        List<Point> targetPoints = new ArrayList<Point>(game.getTargetPoints());
-        List<Point> activeBoxes = extractActiveBoxes(boxes, targetPoints);
+        // The snapshot is immutable, so it's read as is
+        final GameSnapshot snapshot = getSnapshot();
+        Point molePosition = snapshot.getMolePosition();
+        final List<Point> boxes = snapshot.getBoxes();
+        final List<Point> targetPoints = snapshot.getTargetPoints();
         Rectangle cellRect = null;
-        // Active boxes
-        for (Point activeBox : activeBoxes) {
-            cellRect = calcCellRect(activeBox.x, activeBox.y);
-            drawImage(graphics2d, cellRect, "box_active.png");
-        }
-        // Inactive boxes
+        // Boxes (active ones stand on target points)
         for (Point box : boxes) {
-            cellRect = calcCellRect(box.x, box.y);
-            drawImage(graphics2d, cellRect, "box_inactive.png");
+            cellRect = calcBoxRect(box);
+            if (cellRect.intersects(renderDetails.fieldArea)) {
+                drawImage(graphics2d, cellRect, snapshot.hasTargetPoint(box) ? "box_active.png" : "box_inactive.png");
+            }
         }
-        // Target points
+        // Target points without boxes
         for (Point targetPoint : targetPoints) {
-            cellRect = calcCellRect(targetPoint.x, targetPoint.y);
-            drawImage(graphics2d, cellRect, "target_point.png");
+            if (visibleCells.contains(targetPoint) && !snapshot.hasBox(targetPoint)) {
+                cellRect = calcCellRect(targetPoint.x, targetPoint.y);
+                drawImage(graphics2d, cellRect, "target_point.png");
+            }
         }
         // Mole
         if (isValidPosition(fieldSize, molePosition)) {
-            cellRect = calcCellRect(molePosition.x, molePosition.y);
+            cellRect = calcAnimatedCellRect(molePosition, (moveAnimation != null) ? moveAnimation.moleFrom : null);
             drawImage(graphics2d, cellRect, "mole.png");
         }
+        graphics2d.dispose();
+        adjustAutoQuality(System.nanoTime() - drawStartTime);
+    }
+
+    // Has to be called when a cell of the field has been changed
+    protected void invalidateCell(Point cell) {
+        if (chunkCache != null && cell != null) {
+            chunkCache.invalidateCell(cell.x, cell.y);
+        }
+    }
+
+    // Has to be called when cells of the area (column, row, count of columns, count
+    // of rows) have been changed
+    protected void invalidateCells(Rectangle cells) {
+        if (chunkCache == null || cells == null || cells.isEmpty()) {
+            return;
+        }
+        final int lastChunkColumn = (cells.x + cells.width - 1) / ChunkCache.CHUNK_SIZE;
+        final int lastChunkRow = (cells.y + cells.height - 1) / ChunkCache.CHUNK_SIZE;
+        for (int chunkRow = cells.y / ChunkCache.CHUNK_SIZE; chunkRow <= lastChunkRow; ++chunkRow) {
+            for (int chunkColumn = cells.x / ChunkCache.CHUNK_SIZE; chunkColumn <= lastChunkColumn; ++chunkColumn) {
+                chunkCache.invalidateCell(chunkColumn * ChunkCache.CHUNK_SIZE, chunkRow * ChunkCache.CHUNK_SIZE);
+            }
+        }
+    }
+
+    // Scrolls the viewport by the offset (in pixels). Returns true if it has been
+    // scrolled, the caller is responsible for repainting
+    protected boolean scrollBy(int dx, int dy) {
+        renderIfRequired();
+        final Point prevScrollOffset = (Point) scrollOffset.clone();
+        scrollOffset.translate(dx, dy);
+        clampScrollOffset();
+        return !scrollOffset.equals(prevScrollOffset);
+    }
+
+    // Scrolls the viewport so that the cell and a few cells around it are visible
+    protected boolean scrollToCell(Point cell) {
+        if (game == null || cell == null) {
+            return false;
+        }
+        renderIfRequired();
+        final Dimension cellSize = renderDetails.cellSize;
+        final Rectangle viewport = renderDetails.fieldArea;
+        final int marginX = Math.max(0, Math.min(SCROLL_MARGIN_CELL_COUNT * cellSize.width,
+                (viewport.width - cellSize.width) / 2));
+        final int marginY = Math.max(0, Math.min(SCROLL_MARGIN_CELL_COUNT * cellSize.height,
+                (viewport.height - cellSize.height) / 2));
+        final int cellX = cell.x * cellSize.width;
+        final int cellY = cell.y * cellSize.height;
+        int dx = 0;
+        int dy = 0;
+        if (cellX - marginX < scrollOffset.x) {
+            dx = cellX - marginX - scrollOffset.x;
+        } else if (cellX + cellSize.width + marginX > scrollOffset.x + viewport.width) {
+            dx = cellX + cellSize.width + marginX - scrollOffset.x - viewport.width;
+        }
+        if (cellY - marginY < scrollOffset.y) {
+            dy = cellY - marginY - scrollOffset.y;
+        } else if (cellY + cellSize.height + marginY > scrollOffset.y + viewport.height) {
+            dy = cellY + cellSize.height + marginY - scrollOffset.y - viewport.height;
+        }
+        return scrollBy(dx, dy);
+    }
+
+    // Returns range of cells (column, row, count of columns, count of rows) that
+    // are visible in the viewport
+    protected Rectangle calcVisibleCells() {
+        renderIfRequired();
+        final Dimension fieldSize = game.getFieldSize();
+        final Dimension cellSize = renderDetails.cellSize;
+        final Rectangle viewport = renderDetails.fieldArea;
+        if (cellSize.width <= 0 || cellSize.height <= 0 || viewport.isEmpty()) {
+            return new Rectangle();
+        }
+        final int firstColumn = scrollOffset.x / cellSize.width;
+        final int firstRow = scrollOffset.y / cellSize.height;
+        final int lastColumn = Math.min(fieldSize.width - 1, (scrollOffset.x + viewport.width - 1) / cellSize.width);
+        final int lastRow = Math.min(fieldSize.height - 1, (scrollOffset.y + viewport.height - 1) / cellSize.height);
+        return new Rectangle(firstColumn, firstRow, lastColumn - firstColumn + 1, lastRow - firstRow + 1);
+    }
+
+    private void clampScrollOffset() {
+        final int maxX = Math.max(0, renderDetails.contentSize.width - renderDetails.fieldArea.width);
+        final int maxY = Math.max(0, renderDetails.contentSize.height - renderDetails.fieldArea.height);
+        scrollOffset.x = Math.max(0, Math.min(maxX, scrollOffset.x));
+        scrollOffset.y = Math.max(0, Math.min(maxY, scrollOffset.y));
     }
 
     static private Dimension calcCellSize(Dimension fieldSize, Rectangle workingRect) {
@@ -161,12 +336,33 @@ public class GamePanelBase extends PanelBase implements Game.SizeListener
 
     }
 
-    private Rectangle calcCellRect(int x, int y) {
-        return new Rectangle(renderDetails.fieldArea.x + renderDetails.cellSize.width * x,
-                renderDetails.fieldArea.y + renderDetails.cellSize.height * y, renderDetails.cellSize.width,
+    protected Rectangle calcCellRect(int x, int y) {
+        return new Rectangle(renderDetails.fieldArea.x - scrollOffset.x + renderDetails.cellSize.width * x,
+                renderDetails.fieldArea.y - scrollOffset.y + renderDetails.cellSize.height * y,
+                renderDetails.cellSize.width,
                 renderDetails.cellSize.height);
     }
 
+    private Rectangle calcBoxRect(Point box) {
+        if (moveAnimation == null || !box.equals(moveAnimation.boxTo)) {
+            return calcCellRect(box.x, box.y);
+        }
+        return calcAnimatedCellRect(box, moveAnimation.boxFrom);
+    }
+
+    // Returns rectangle between cells 'from' and 'to' according to the progress of
+    // the current move animation
+    private Rectangle calcAnimatedCellRect(Point to, Point from) {
+        Rectangle rect = calcCellRect(to.x, to.y);
+        if (moveAnimation == null || from == null || moveAnimation.progress >= 1.0) {
+            return rect;
+        }
+        final double rest = 1.0 - moveAnimation.progress;
+        rect.translate((int) Math.round((from.x - to.x) * rest * renderDetails.cellSize.width),
+                (int) Math.round((from.y - to.y) * rest * renderDetails.cellSize.height));
+        return rect;
+    }
+
     static public boolean isValidPosition(Dimension fieldSize, Point position) {
         if (fieldSize == null || position == null) {
             return false;
@@ -180,115 +376,270 @@ public class GamePanelBase extends PanelBase implements Game.SizeListener
         return true;
     }
 
-    static private List<Point> extractActiveBoxes(List<Point> boxes, List<Point> targetPoints) {
-        List<Point> activeBoxes = new ArrayList<>();
-        PointSet boxSet = new PointSet(boxes);
-        PointSet targetPointSet = new PointSet(targetPoints);
-        List<Point> newBoxes = new ArrayList<Point>();
-        List<Point> newTargetPoints = new ArrayList<Point>();
-        // 1. Active boxes + new box list
-        for (Point box : boxes) {
-            if (targetPointSet.has(box)) {
-                activeBoxes.add(box);
-            } else {
-                newBoxes.add(box);
-            }
-        }
-        // 2. Remove target points
-        for (Point targetPoint : targetPoints) {
-            if (!boxSet.has(targetPoint)) {
-                newTargetPoints.add(targetPoint);
-            }
+    private void drawImage(Graphics2D graphics, Rectangle cellRect, String resourceId) {
+        Image image = ImageStorage.getSprite(resourceId, cellRect.width, cellRect.height,
+                ImageStorage.getScale(graphics));
+        if (image != null) {
+            graphics.drawImage(image, cellRect.x, cellRect.y, null);
+            ++renderStatistics.tilesBlitted;
         }
-        // 3. Update data
-        boxes.clear();
-        boxes.addAll(newBoxes);
-        targetPoints.clear();
-        targetPoints.addAll(newTargetPoints);
-
-        return activeBoxes;
     }
 
-    private void drawCell(Graphics2D graphics, Rectangle cellRect, Cell cell) {
-        Cell.Type type = cell.type;
-        if (type == Cell.Type.WALL) {
-            graphics.setColor(Color.RED);
-            graphics.fillRect(cellRect.x, cellRect.y, cellRect.width, cellRect.height);
-            drawImage(graphics, cellRect, "wall.png");
-        } else if (type == Cell.Type.FLOOR) {
-            graphics.setColor(Color.BLACK);
-            graphics.fillRect(cellRect.x, cellRect.y, cellRect.width, cellRect.height);
-            drawImage(graphics, cellRect, "floor.png");
+    // Draws overlay with render statistics: the last paint time, p50/p99 of the
+    // recent paints and their histogram, count of tiles and input latency
+    protected void drawRenderStatistics(Graphics graphics) {
+        if (!renderStatistics.visible) {
+            return;
         }
+        Graphics2D graphics2d = (Graphics2D) graphics.create();
+        final int x = PADDING;
+        final int y = margins.getTop() + PADDING;
+        final int lineHeight = STATISTICS_FONT_SIZE + 4;
+        final int textHeight = 3 * lineHeight;
+        final TimingRecorder paintTimes = renderStatistics.paintTimes;
+        final TimingRecorder inputLatencies = renderStatistics.inputLatencies;
+
+        graphics2d.setColor(STATISTICS_BACKGROUND_COLOR);
+        graphics2d.fillRect(x, y, STATISTICS_WIDTH, textHeight + STATISTICS_HISTOGRAM_HEIGHT + 3 * PADDING / 2);
+
+        graphics2d.setFont(getFont().deriveFont((float) STATISTICS_FONT_SIZE));
+        graphics2d.setColor(Color.WHITE);
+        int textY = y + lineHeight;
+        graphics2d.drawString(String.format("paint %.1f ms  p50 %.1f  p99 %.1f", toMillis(paintTimes.getLast()),
+                toMillis(paintTimes.getPercentile(50)), toMillis(paintTimes.getPercentile(99))), x + PADDING / 2, textY);
+        textY += lineHeight;
+        final RenderQuality effectiveQuality = getEffectiveRenderQuality();
+        graphics2d.drawString(String.format("tiles %d  quality %s", renderStatistics.tilesBlitted,
+                (renderQuality == RenderQuality.AUTO) ? "auto " + effectiveQuality.name().toLowerCase()
+                        : effectiveQuality.name().toLowerCase()),
+                x + PADDING / 2, textY);
+        textY += lineHeight;
+        graphics2d.drawString(String.format("input %.1f ms  p50 %.1f  p99 %.1f", toMillis(inputLatencies.getLast()),
+                toMillis(inputLatencies.getPercentile(50)), toMillis(inputLatencies.getPercentile(99))),
+                x + PADDING / 2, textY);
+
+        // Histogram of the recent paint times, the oldest one is on the left
+        final int histogramBottom = y + textHeight + PADDING + STATISTICS_HISTOGRAM_HEIGHT;
+        final int barWidth = Math.max(1, (STATISTICS_WIDTH - PADDING) / paintTimes.getCapacity());
+        for (int age = 0; age < paintTimes.getCount(); ++age) {
+            final long time = paintTimes.getRecent(age);
+            final int barHeight = (int) Math.min(STATISTICS_HISTOGRAM_HEIGHT,
+                    time * STATISTICS_HISTOGRAM_HEIGHT / STATISTICS_HISTOGRAM_SCALE_NANOS);
+            graphics2d.setColor(time > FRAME_BUDGET_NANOS ? Color.RED : Color.GREEN);
+            final int barX = x + PADDING / 2 + (paintTimes.getCapacity() - 1 - age) * barWidth;
+            graphics2d.fillRect(barX, histogramBottom - barHeight, barWidth, barHeight);
+        }
+        // Frame budget line
+        final int budgetY = histogramBottom
+                - (int) (FRAME_BUDGET_NANOS * STATISTICS_HISTOGRAM_HEIGHT / STATISTICS_HISTOGRAM_SCALE_NANOS);
+        graphics2d.setColor(Color.YELLOW);
+        graphics2d.drawLine(x + PADDING / 2, budgetY, x + STATISTICS_WIDTH - PADDING / 2, budgetY);
+        graphics2d.dispose();
     }
 
-    private void drawImage(Graphics2D graphics, Rectangle cellRect, String resourceId) {
-        Image image = ImageStorage.getImage(resourceId);
-        if (image != null) {
-            graphics.drawImage(image, cellRect.x, cellRect.y, cellRect.width, cellRect.height, null);
+    // In the automatic mode the field is drawn with a faster profile when the
+    // median time of recent draws exceeds the frame budget (e.g. a large field
+    // on a slow device). Samples of the previous profile are dropped on a switch
+    private void adjustAutoQuality(long drawTime) {
+        if (renderQuality != RenderQuality.AUTO || autoQuality == RenderQuality.SPEED) {
+            return;
+        }
+        autoQualityTimes.record(drawTime);
+        if (autoQualityTimes.getCount() == autoQualityTimes.getCapacity()
+                && autoQualityTimes.getPercentile(50) > FRAME_BUDGET_NANOS) {
+            autoQuality = autoQuality.faster();
+            autoQualityTimes.clear();
         }
     }
 
+    // The automatic mode starts from the best profile again (e.g. for a new field)
+    private void resetAutoQuality() {
+        autoQuality = RenderQuality.QUALITY;
+        autoQualityTimes.clear();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
     protected void renderIfRequired() {
         if (renderDetails != null) {
             return;
         }
         renderDetails = new RenderDetails();
-        renderDetails.fieldArea = calcWorkingGameRect();
-        renderDetails.cellSize = calcCellSize(game.getFieldSize(), renderDetails.fieldArea);
+        final Rectangle availableRect = calcAvailableRect();
+        final Dimension fieldSize = game.getFieldSize();
+        if (availableRect.isEmpty() || fieldSize.width <= 0 || fieldSize.height <= 0) {
+            renderDetails.fieldArea = calcWorkingGameRect(availableRect, fieldSize);
+            renderDetails.cellSize = new Dimension(0, 0);
+        } else {
+            final FieldLayout layout = calcFieldLayout(availableRect, fieldSize);
+            renderDetails.fieldArea = layout.fieldArea;
+            renderDetails.cellSize = layout.cellSize;
+        }
+        renderDetails.contentSize = new Dimension(renderDetails.cellSize.width * fieldSize.width,
+                renderDetails.cellSize.height * fieldSize.height);
+        clampScrollOffset();
+
+        // Chunks are kept while the cell size is the same (e.g. the panel is resized
+        // without changing scale or the field is scrolled)
+        if (chunkCache == null || !chunkCache.getCellSize().equals(renderDetails.cellSize)) {
+            chunkCache = createChunkCache(game, renderDetails.cellSize, renderDetails.fieldArea,
+                    getGraphicsConfiguration());
+        }
+    }
+
+    // Uses the static layer prepared by prepareChunkCache() for the current game.
+    // It's dropped on the first render if the cell size is different (e.g. the
+    // panel has been resized since then)
+    protected void setPreparedChunkCache(ChunkCache preparedChunkCache) {
+        if (preparedChunkCache != null && preparedChunkCache.getGame() == game) {
+            chunkCache = preparedChunkCache;
+        }
+    }
+
+    private static ChunkCache createChunkCache(Game game, Dimension cellSize, Rectangle viewport,
+            GraphicsConfiguration configuration) {
+        // All visible chunks have to fit into the cache whatever the budget is
+        final int chunkWidth = Math.max(1, ChunkCache.CHUNK_SIZE * cellSize.width);
+        final int chunkHeight = Math.max(1, ChunkCache.CHUNK_SIZE * cellSize.height);
+        final int visibleChunkCount = (viewport.width / chunkWidth + 2) * (viewport.height / chunkHeight + 2);
+        return new ChunkCache(game, cellSize, configuration, CHUNK_CACHE_MEMORY_BUDGET, 2 * visibleChunkCount);
+    }
+
+    // Field area and cell size of a field that isn't empty in a non-empty area
+    private static FieldLayout calcFieldLayout(Rectangle availableRect, Dimension fieldSize) {
+        final FieldLayout layout = new FieldLayout();
+        layout.fieldArea = calcWorkingGameRect(availableRect, fieldSize);
+        layout.cellSize = calcCellSize(fieldSize, layout.fieldArea);
+        if (layout.cellSize.width < MIN_CELL_SIZE || layout.cellSize.height < MIN_CELL_SIZE) {
+            // The field doesn't fit the panel: cells keep the minimal size and the
+            // field is scrolled inside the viewport
+            layout.cellSize = new Dimension(MIN_CELL_SIZE, MIN_CELL_SIZE);
+            layout.fieldArea = calcViewport(availableRect, fieldSize);
+        }
+        return layout;
     }
 
     // Calculates work space for panel which has a field
-    private Rectangle calcWorkingGameRect() {
-        Dimension size = getSize();
-        final double width = size.getWidth();
-        final double height = size.getHeight();
-        if (width <= 0.0 || height <= 0.0) {
-            return null;
+    private static Rectangle calcWorkingGameRect(Rectangle availableRect, Dimension fieldSize) {
+        Rectangle workRect = (Rectangle) availableRect.clone();
+        if (workRect.isEmpty()) {
+            return workRect;
         }
-        Rectangle workRect = new Rectangle(0, 0, (int) width, (int) height);
-        RectangleUtils.deflateRect(workRect, margins);
+        final double workRectRatio = (double) workRect.width / (double) workRect.height;
+        if (fieldSize.width <= 0.0 || fieldSize.height <= 0.0) {
+            return new Rectangle(workRect.x, workRect.y, 0, 0);
+        }
+        // Calculating scale rate
+        final double fieldRatio = (double) fieldSize.width / (double) fieldSize.height;
+        final boolean scaleByWidth = (fieldRatio < workRectRatio);
+        if (scaleByWidth) {
+            final int newWorkRectWidth = (int) (workRect.getHeight() * fieldRatio);
+            workRect.x = workRect.x + (workRect.width - newWorkRectWidth) / 2;
+            workRect.width = newWorkRectWidth;
+        } else {
+            final int newWorkRectHeight = (int) (workRect.getWidth() / fieldRatio);
+            workRect.y = workRect.y + (workRect.height - newWorkRectHeight) / 2;
+            workRect.height = newWorkRectHeight;
+        }
+        // There are rounding errors
+        final Dimension cellSize = calcCellSize(fieldSize, workRect);
+        final int correctedWorkingRectWidth = cellSize.width * fieldSize.width;
+        final int correctedWorkingRectHeight = cellSize.height * fieldSize.height;
+        workRect.x = workRect.x + (workRect.width - correctedWorkingRectWidth) / 2;
+        workRect.width = correctedWorkingRectWidth;
+        workRect.y = workRect.y + (workRect.height - correctedWorkingRectHeight) / 2;
+        workRect.height = correctedWorkingRectHeight;
 
-        RectangleUtils.deflateRect(workRect, PADDING, PADDING);
-        if (game != null) {
-            final double workRectRatio = (double) workRect.width / (double) workRect.height;
-            Dimension fieldSize = game.getFieldSize();
-            if (fieldSize.width <= 0.0 || fieldSize.height <= 0.0) {
-                return null;
-            }
-            // Calculating scale rate
-            final double fieldRatio = (double) fieldSize.width / (double) fieldSize.height;
-            final boolean scaleByWidth = (fieldRatio < workRectRatio);
-            if (scaleByWidth) {
-                final int newWorkRectWidth = (int) (workRect.getHeight() * fieldRatio);
-                workRect.x = workRect.x + (workRect.width - newWorkRectWidth) / 2;
-                workRect.width = newWorkRectWidth;
-            } else {
-                final int newWorkRectHeight = (int) (workRect.getWidth() / fieldRatio);
-                workRect.y = workRect.y + (workRect.height - newWorkRectHeight) / 2;
-                workRect.height = newWorkRectHeight;
-            }
-            // There are rounding errors
-            final Dimension cellSize = calcCellSize(fieldSize, workRect);
-            final int correctedWorkingRectWidth = cellSize.width * fieldSize.width;
-            final int correctedWorkingRectHeight = cellSize.height * fieldSize.height;
-            workRect.x = workRect.x + (workRect.width - correctedWorkingRectWidth) / 2;
-            workRect.width = correctedWorkingRectWidth;
-            workRect.y = workRect.y + (workRect.height - correctedWorkingRectHeight) / 2;
-            workRect.height = correctedWorkingRectHeight;
+        return workRect;
+    }
+
+    // Calculates viewport for the field with cells of minimal size: it takes the
+    // whole available space in the dimension where the field doesn't fit
+    private static Rectangle calcViewport(Rectangle availableRect, Dimension fieldSize) {
+        Rectangle viewport = (Rectangle) availableRect.clone();
+        final int contentWidth = MIN_CELL_SIZE * fieldSize.width;
+        final int contentHeight = MIN_CELL_SIZE * fieldSize.height;
+        if (contentWidth < viewport.width) {
+            viewport.x += (viewport.width - contentWidth) / 2;
+            viewport.width = contentWidth;
+        }
+        if (contentHeight < viewport.height) {
+            viewport.y += (viewport.height - contentHeight) / 2;
+            viewport.height = contentHeight;
         }
+        return viewport;
+    }
 
+    // Returns the panel area without margins and padding
+    private Rectangle calcAvailableRect() {
+        Dimension size = getSize();
+        Rectangle workRect = new Rectangle(0, 0, size.width, size.height);
+        RectangleUtils.deflateRect(workRect, margins);
+        RectangleUtils.deflateRect(workRect, PADDING, PADDING);
+        workRect.width = Math.max(0, workRect.width);
+        workRect.height = Math.max(0, workRect.height);
         return workRect;
     }
 
+    private static class FieldLayout {
+        Rectangle fieldArea = null;
+        Dimension cellSize = null;
+    }
+
     protected class RenderDetails {
+        // Area of the panel where the field is drawn (the viewport)
         public Rectangle fieldArea = null;
         public Dimension cellSize = null;
+        // Size of the whole field in pixels, it's bigger than the viewport if the
+        // field is scrolled
+        public Dimension contentSize = null;
+    }
+
+    // Describes the last move while it's being animated: the mole and the pushed
+    // box are drawn between their previous and current cells
+    protected class MoveAnimation {
+        public Point moleFrom = null;
+        public Point boxFrom = null;
+        public Point boxTo = null;
+        public double progress = 0.0;
+    }
+
+    protected MoveAnimation moveAnimation = null;
+
+    // Statistics shown by the render statistics overlay
+    protected class RenderStatistics {
+        public final TimingRecorder paintTimes = new TimingRecorder(STATISTICS_SAMPLE_COUNT);
+        // Time from key press to the paint that shows its result
+        public final TimingRecorder inputLatencies = new TimingRecorder(STATISTICS_SAMPLE_COUNT);
+        public int tilesBlitted = 0;
+        public boolean visible = false;
     }
 
+    protected final RenderStatistics renderStatistics = new RenderStatistics();
     private Margins margins = new Margins();
     private Game game = null;
     protected final int PADDING = 10;
     protected RenderDetails renderDetails = null;
+    private ChunkCache chunkCache = null;
+    private RenderQuality renderQuality = RenderQuality.AUTO;
+    // Profile chosen by the automatic mode
+    private RenderQuality autoQuality = RenderQuality.QUALITY;
+    private final TimingRecorder autoQualityTimes = new TimingRecorder(AUTO_QUALITY_SAMPLE_COUNT);
+    private static final long CHUNK_CACHE_MEMORY_BUDGET = 64L * 1024 * 1024;
+    // Position of the viewport on the whole field (in pixels)
+    protected final Point scrollOffset = new Point(0, 0);
+    protected static final int MIN_CELL_SIZE = 16;
+    private static final int SCROLL_STEP_CELL_COUNT = 3;
+    private static final int SCROLL_MARGIN_CELL_COUNT = 3;
+    protected static final long FRAME_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+    private static final int STATISTICS_SAMPLE_COUNT = 120;
+    private static final int AUTO_QUALITY_SAMPLE_COUNT = 30;
+    private static final int STATISTICS_WIDTH = 2 * STATISTICS_SAMPLE_COUNT + 10;
+    private static final int STATISTICS_FONT_SIZE = 12;
+    private static final int STATISTICS_HISTOGRAM_HEIGHT = 40;
+    private static final long STATISTICS_HISTOGRAM_SCALE_NANOS = 2 * FRAME_BUDGET_NANOS;
+    private static final Color STATISTICS_BACKGROUND_COLOR = new Color(0, 0, 0, 180);
     private static final long serialVersionUID = 1L;
 }
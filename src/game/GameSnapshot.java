@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Point;
+import java.util.List;
+
+/**
+ * The {@GameSnapshot} is an immutable view of the dynamic part of a game. The
+ * game publishes a new snapshot after every change; snapshots share the
+ * unchanged state (boxes, target points) with their predecessors, so they are
+ * cheap to create and can be read from any thread without locks or copies.
+ * Points of a snapshot mustn't be changed.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public final class GameSnapshot {
+    // The move that has led to the snapshot
+    public static final class Move {
+        public Move(Point moleFrom, Point boxFrom, Point boxTo) {
+            this.moleFrom = moleFrom;
+            this.boxFrom = boxFrom;
+            this.boxTo = boxTo;
+        }
+
+        public final Point moleFrom;
+        // Both are null if the mole hasn't pushed a box
+        public final Point boxFrom;
+        public final Point boxTo;
+    }
+
+    GameSnapshot(GameState state, PointIndex targetPoints, int stepCount, int stepWithLoadCount, Move lastMove) {
+        this.state = state;
+        this.targetPoints = targetPoints;
+        this.stepCount = stepCount;
+        this.stepWithLoadCount = stepWithLoadCount;
+        this.lastMove = lastMove;
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    public Point getMolePosition() {
+        return state.moleLocation;
+    }
+
+    public List<Point> getBoxes() {
+        return state.boxes;
+    }
+
+    public List<Point> getTargetPoints() {
+        return targetPoints.getPoints();
+    }
+
+    public boolean hasBox(Point point) {
+        return state.boxIndex.contains(point);
+    }
+
+    public boolean hasTargetPoint(Point point) {
+        return targetPoints.contains(point);
+    }
+
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    public int getStepWithLoadCount() {
+        return stepWithLoadCount;
+    }
+
+    public Move getLastMove() {
+        return lastMove;
+    }
+
+    private final GameState state;
+    private final PointIndex targetPoints;
+    private final int stepCount;
+    private final int stepWithLoadCount;
+    private final Move lastMove;
+}
@@ -17,28 +17,48 @@
 package game;
 
 import java.awt.Point;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
- * The {@GameState} class that store a state
+ * The {@GameState} class that store a state. It's immutable: a change creates
+ * a new state that shares unchanged parts with the previous one, so states can
+ * be kept in the history and read from other threads without copying.
  * 
  * @author olegshchepilov
  *
  */
 
-public class GameState implements Cloneable {
+public final class GameState {
 
-    @Override
-    public Object clone() {
-        GameState result = new GameState();
-        result.moleLocation = moleLocation == null ? null : (Point) moleLocation.clone();
-        for (Point box : boxes) {
-            result.boxes.add((Point) box.clone());
-        }
-        return result;
+    public GameState() {
+        this(null, PointIndex.EMPTY);
     }
 
-    public Point moleLocation = null;
-    public List<Point> boxes = new ArrayList<Point>();
+    GameState(Point moleLocation, PointIndex boxIndex) {
+        this.moleLocation = moleLocation;
+        this.boxIndex = boxIndex;
+        this.boxes = boxIndex.getPoints();
+    }
+
+    public GameState withMoleLocation(Point newMoleLocation) {
+        return new GameState(newMoleLocation, boxIndex);
+    }
+
+    public GameState withBoxes(PointIndex newBoxIndex) {
+        return (newBoxIndex == boxIndex) ? this : new GameState(moleLocation, newBoxIndex);
+    }
+
+    // Replaces one box, all other boxes are copied by reference
+    public GameState withBoxMoved(Point boxLocation, Point newBoxLocation) {
+        return new GameState(moleLocation, boxIndex.withMoved(boxLocation, newBoxLocation));
+    }
+
+    public boolean hasBox(int x, int y) {
+        return boxIndex.contains(x, y);
+    }
+
+    public final Point moleLocation;
+    public final PointIndex boxIndex;
+    // The same boxes as an unmodifiable list
+    public final List<Point> boxes;
 }
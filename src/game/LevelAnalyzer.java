@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+
+/**
+ * The {@LevelAnalyzer} checks whether a level can be solved. It works with a
+ * copy of the level, so the analysis can be run on any thread while the game is
+ * being changed. The checks go from the cheap ones (the mole, count of boxes,
+ * closed walls, reachable targets, boxes on dead squares) to a search of a
+ * solution that is limited by time.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class LevelAnalyzer {
+    public enum Verdict {
+        NO_MOLE, TOO_FEW_BOXES, NOT_CLOSED, UNREACHABLE, DEAD_BOXES, SOLVABLE, UNSOLVABLE, UNKNOWN
+    }
+
+    // Copies the level, so it has to be called on the thread that changes the game
+    public LevelAnalyzer(Game game) {
+        final Field field = game.getField();
+        if (field == null) {
+            width = 0;
+            height = 0;
+            cells = new byte[0];
+        } else {
+            width = field.getWidth();
+            height = field.getHeight();
+            cells = field.copyCells();
+        }
+        final Point molePosition = game.getMolePosition();
+        mole = isInside(molePosition) ? molePosition.y * width + molePosition.x : -1;
+        boxes = toIndexes(game.getBoxes());
+        targets = toIndexes(game.getTargetPoints());
+    }
+
+    // Throws CancellationException if the current thread has been interrupted
+    public Verdict analyze(long solveTimeoutNanos) {
+        if (mole < 0) {
+            return Verdict.NO_MOLE;
+        }
+        if (boxes.length < targets.length) {
+            return Verdict.TOO_FEW_BOXES;
+        }
+
+        // The mole can walk only inside its region whatever boxes are moved
+        final BitSet region = findRegion(mole);
+        checkCancelled();
+        if (!isClosed(region)) {
+            return Verdict.NOT_CLOSED;
+        }
+        for (int target : targets) {
+            if (!region.get(target)) {
+                return Verdict.UNREACHABLE;
+            }
+        }
+        if (countBoxes(region) < targets.length) {
+            return Verdict.UNREACHABLE;
+        }
+
+        final int[] pushDistances = calcPushDistances(targets);
+        checkCancelled();
+        final BitSet liveSquares = new BitSet(cells.length);
+        for (int cell = region.nextSetBit(0); cell >= 0; cell = region.nextSetBit(cell + 1)) {
+            if (pushDistances[cell] >= 0) {
+                liveSquares.set(cell);
+            }
+        }
+        if (countBoxes(liveSquares) < targets.length) {
+            return Verdict.DEAD_BOXES;
+        }
+
+        return solve(pushDistances, System.nanoTime() + solveTimeoutNanos);
+    }
+
+    // Search state: positions of boxes (sorted) and the leftmost top cell that the
+    // mole can reach
+    private static final class State {
+        State(int[] boxes, int mole) {
+            this(boxes, mole, 0);
+        }
+
+        State(int[] boxes, int mole, int estimate) {
+            this.boxes = boxes;
+            this.mole = mole;
+            this.estimate = estimate;
+            hash = 31 * Arrays.hashCode(boxes) + mole;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof State)) {
+                return false;
+            }
+            final State state = (State) object;
+            return mole == state.mole && Arrays.equals(boxes, state.boxes);
+        }
+
+        final int[] boxes;
+        final int mole;
+        // Estimated count of pushes that are left (see calcPushDistances())
+        final int estimate;
+        final int hash;
+    }
+
+    // Greedy best-first search of pushes: states which boxes are closer to target
+    // points are expanded first. If every box has to reach a target point, boxes
+    // are never pushed to dead squares or into frozen 2x2 blocks. Extra boxes may
+    // be parked there, so such levels are searched without these prunes and an
+    // exhausted search can't prove that they are unsolvable
+    private Verdict solve(int[] pushDistances, long deadline) {
+        final boolean everyBoxIsNeeded = (boxes.length == targets.length);
+        final int[] offsets = { -1, 1, -width, width };
+        final int[] boxStamps = new int[cells.length];
+        final int[] visitStamps = new int[cells.length];
+        final int[] queue = new int[cells.length];
+        int stamp = 0;
+
+        final HashSet<State> visited = new HashSet<State>();
+        final PriorityQueue<State> states = new PriorityQueue<State>(
+                (first, second) -> Integer.compare(first.estimate, second.estimate));
+        // Distances from every target point are used to match boxes with target
+        // points if the table isn't too big
+        int[][] targetDistances = null;
+        if ((long) targets.length * cells.length <= MAX_DISTANCE_TABLE_SIZE) {
+            targetDistances = new int[targets.length][];
+            for (int i = 0; i < targets.length; ++i) {
+                targetDistances[i] = calcPushDistances(new int[] { targets[i] });
+            }
+        }
+        final int[] initialBoxes = boxes.clone();
+        Arrays.sort(initialBoxes);
+        states.add(new State(initialBoxes, mole, estimate(initialBoxes, pushDistances, targetDistances)));
+        while (!states.isEmpty()) {
+            checkCancelled();
+            if (System.nanoTime() > deadline || visited.size() >= MAX_STATE_COUNT) {
+                return Verdict.UNKNOWN;
+            }
+            final State state = states.poll();
+            ++stamp;
+            for (int box : state.boxes) {
+                boxStamps[box] = stamp;
+            }
+            if (isSolved(boxStamps, stamp)) {
+                return Verdict.SOLVABLE;
+            }
+
+            // Cells the mole can reach without pushing
+            int count = 0;
+            int normalizedMole = state.mole;
+            queue[count++] = state.mole;
+            visitStamps[state.mole] = stamp;
+            for (int head = 0; head < count; ++head) {
+                final int cell = queue[head];
+                normalizedMole = Math.min(normalizedMole, cell);
+                for (int offset : offsets) {
+                    final int next = cell + offset;
+                    if (isNeighbour(cell, next) && visitStamps[next] != stamp && boxStamps[next] != stamp
+                            && isFloor(next)) {
+                        visitStamps[next] = stamp;
+                        queue[count++] = next;
+                    }
+                }
+            }
+            if (!visited.add(new State(state.boxes, normalizedMole))) {
+                continue;
+            }
+
+            // Pushes that are possible from the reachable cells
+            for (int head = 0; head < count; ++head) {
+                final int cell = queue[head];
+                for (int offset : offsets) {
+                    final int box = cell + offset;
+                    final int to = box + offset;
+                    if (!isNeighbour(cell, box) || boxStamps[box] != stamp || !isNeighbour(box, to)
+                            || boxStamps[to] == stamp || !isFloor(to)) {
+                        continue;
+                    }
+                    if (everyBoxIsNeeded) {
+                        if (pushDistances[to] < 0) {
+                            continue;
+                        }
+                        boxStamps[box] = 0;
+                        boxStamps[to] = stamp;
+                        final boolean frozen = isFrozen(to, boxStamps, stamp);
+                        boxStamps[to] = 0;
+                        boxStamps[box] = stamp;
+                        if (frozen) {
+                            continue;
+                        }
+                    }
+                    final int[] newBoxes = state.boxes.clone();
+                    newBoxes[Arrays.binarySearch(newBoxes, box)] = to;
+                    Arrays.sort(newBoxes);
+                    final int estimate = estimate(newBoxes, pushDistances, targetDistances);
+                    if (estimate != Integer.MAX_VALUE) {
+                        states.add(new State(newBoxes, box, estimate));
+                    }
+                }
+            }
+        }
+        return everyBoxIsNeeded ? Verdict.UNSOLVABLE : Verdict.UNKNOWN;
+    }
+
+    // Estimates count of pushes that are left. Every target point is greedily
+    // matched with the closest free box; MAX_VALUE means that some target point
+    // can't get any box anymore. The greedy matching may take a box another
+    // target point needs, then that target point just isn't counted
+    private static int estimate(int[] boxes, int[] pushDistances, int[][] targetDistances) {
+        int result = 0;
+        if (targetDistances == null) {
+            for (int box : boxes) {
+                result += Math.max(0, pushDistances[box]);
+            }
+            return result;
+        }
+        final boolean[] matched = new boolean[boxes.length];
+        for (int[] distances : targetDistances) {
+            int bestBox = -1;
+            for (int i = 0; i < boxes.length; ++i) {
+                final int distance = distances[boxes[i]];
+                if (!matched[i] && distance >= 0 && (bestBox < 0 || distance < distances[boxes[bestBox]])) {
+                    bestBox = i;
+                }
+            }
+            if (bestBox < 0) {
+                for (int box : boxes) {
+                    if (distances[box] >= 0) {
+                        bestBox = box;
+                        break;
+                    }
+                }
+                if (bestBox < 0) {
+                    return Integer.MAX_VALUE;
+                }
+                continue;
+            }
+            matched[bestBox] = true;
+            result += distances[boxes[bestBox]];
+        }
+        return result;
+    }
+
+    // A box can't be moved anymore if it's a part of a 2x2 block of walls and
+    // boxes. Such a block is a dead end unless all its boxes are on target points
+    private boolean isFrozen(int box, int[] boxStamps, int stamp) {
+        final int column = box % width;
+        for (int dx = -1; dx <= 0; ++dx) {
+            for (int dy = -1; dy <= 0; ++dy) {
+                final int left = column + dx;
+                final int top = box / width + dy;
+                if (left < 0 || top < 0 || left + 1 >= width || top + 1 >= height) {
+                    continue;
+                }
+                final int topLeft = top * width + left;
+                final int[] block = { topLeft, topLeft + 1, topLeft + width, topLeft + width + 1 };
+                boolean blocked = true;
+                boolean hasBoxOutsideTarget = false;
+                for (int cell : block) {
+                    final boolean isBox = boxStamps[cell] == stamp;
+                    if (!isBox && isFloor(cell)) {
+                        blocked = false;
+                        break;
+                    }
+                    hasBoxOutsideTarget |= isBox && !isTarget(cell);
+                }
+                if (blocked && hasBoxOutsideTarget) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isTarget(int cell) {
+        for (int target : targets) {
+            if (target == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSolved(int[] boxStamps, int stamp) {
+        for (int target : targets) {
+            if (boxStamps[target] != stamp) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns floor cells connected with the cell (boxes are ignored)
+    private BitSet findRegion(int start) {
+        final BitSet region = new BitSet(cells.length);
+        final int[] queue = new int[cells.length];
+        int count = 0;
+        queue[count++] = start;
+        region.set(start);
+        for (int head = 0; head < count; ++head) {
+            final int cell = queue[head];
+            for (int next : neighbours(cell)) {
+                if (next >= 0 && !region.get(next) && isFloor(next)) {
+                    region.set(next);
+                    queue[count++] = next;
+                }
+            }
+        }
+        return region;
+    }
+
+    // The region is closed if it's surrounded by walls (not by empty cells or the
+    // edge of the field)
+    private boolean isClosed(BitSet region) {
+        for (int cell = region.nextSetBit(0); cell >= 0; cell = region.nextSetBit(cell + 1)) {
+            for (int next : neighbours(cell)) {
+                if (next < 0 || cells[next] == Cell.Type.NULL.getCode()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Returns for every square the least count of pushes that moves a box from it
+    // to some target point (-1 for dead squares). The counts are found by pulling
+    // boxes from the target points
+    private int[] calcPushDistances(int[] sources) {
+        final int[] distances = new int[cells.length];
+        Arrays.fill(distances, -1);
+        final int[] queue = new int[cells.length];
+        int count = 0;
+        for (int source : sources) {
+            if (distances[source] < 0) {
+                distances[source] = 0;
+                queue[count++] = source;
+            }
+        }
+        final int[] offsets = { -1, 1, -width, width };
+        for (int head = 0; head < count; ++head) {
+            final int cell = queue[head];
+            for (int offset : offsets) {
+                final int from = cell - offset;
+                final int moleCell = from - offset;
+                if (isNeighbour(cell, from) && isNeighbour(from, moleCell) && distances[from] < 0 && isFloor(from)
+                        && isFloor(moleCell)) {
+                    distances[from] = distances[cell] + 1;
+                    queue[count++] = from;
+                }
+            }
+        }
+        return distances;
+    }
+
+    private int countBoxes(BitSet area) {
+        int count = 0;
+        for (int box : boxes) {
+            if (area.get(box)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    // Returns indexes of 4 neighbours, -1 means the edge of the field
+    private int[] neighbours(int cell) {
+        final int column = cell % width;
+        return new int[] { (column > 0) ? cell - 1 : -1, (column < width - 1) ? cell + 1 : -1,
+                (cell >= width) ? cell - width : -1, (cell + width < cells.length) ? cell + width : -1 };
+    }
+
+    // Checks that the cells are adjacent (the row isn't wrapped)
+    private boolean isNeighbour(int cell, int next) {
+        if (next < 0 || next >= cells.length) {
+            return false;
+        }
+        return Math.abs(next - cell) == width || (next / width == cell / width);
+    }
+
+    private boolean isFloor(int cell) {
+        return cells[cell] == Cell.Type.FLOOR.getCode();
+    }
+
+    private boolean isInside(Point point) {
+        return (point != null) && (point.x >= 0) && (point.y >= 0) && (point.x < width) && (point.y < height);
+    }
+
+    private int[] toIndexes(List<Point> points) {
+        int[] result = new int[points.size()];
+        int count = 0;
+        for (Point point : points) {
+            if (isInside(point)) {
+                result[count++] = point.y * width + point.x;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final byte[] cells;
+    private final int mole;
+    private final int[] boxes;
+    private final int[] targets;
+    private static final int MAX_STATE_COUNT = 500000;
+    private static final long MAX_DISTANCE_TABLE_SIZE = 4L * 1024 * 1024;
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The {@LevelCodec} converts a level to its file format and back: one byte per
+ * cell (the same as {@Game#getDataByte}) and a line feed after every row. Cells
+ * are written to and read from a buffer directly, nothing is allocated per cell
+ * or per row.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public final class LevelCodec {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // Returns count of bytes of the encoded level
+    public static int getEncodedSize(Game game) {
+        final Dimension fieldSize = game.getFieldSize();
+        return (fieldSize.width + 1) * fieldSize.height;
+    }
+
+    public static void encode(Game game, WritableByteChannel channel) throws IOException {
+        encode(game, channel, ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+    }
+
+    // The buffer is used as a temporary storage, so one buffer can be reused for
+    // many levels. It's flushed to the channel whenever it's full
+    public static void encode(Game game, WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        final Dimension fieldSize = game.getFieldSize();
+        for (int y = 0; y < fieldSize.height; ++y) {
+            for (int x = 0; x <= fieldSize.width; ++x) {
+                if (!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+                buffer.put((x < fieldSize.width) ? game.getDataByte(x, y) : LINE_FEED);
+            }
+        }
+        flush(channel, buffer);
+    }
+
+    // Puts the encoded level into the buffer. Throws BufferOverflowException if
+    // the buffer has less than getEncodedSize() bytes remaining
+    public static void encode(Game game, ByteBuffer buffer) {
+        final Dimension fieldSize = game.getFieldSize();
+        for (int y = 0; y < fieldSize.height; ++y) {
+            for (int x = 0; x < fieldSize.width; ++x) {
+                buffer.put(game.getDataByte(x, y));
+            }
+            buffer.put(LINE_FEED);
+        }
+    }
+
+    // Loads the level from the position of the buffer to its limit into the game.
+    // Bytes are read in place (the buffer may be a mapped file), line feeds
+    // separate rows, carriage returns before them are skipped and short rows
+    // are padded with empty cells. Returns false if there is no row or the level
+    // is too big
+    public static boolean decode(ByteBuffer buffer, Game game) {
+        final int start = buffer.position();
+        final int end = buffer.limit();
+
+        // Size of the field
+        int width = 0;
+        int height = 0;
+        int rowLength = 0;
+        for (int i = start; i < end; ++i) {
+            final byte value = buffer.get(i);
+            if (value == LINE_FEED) {
+                width = Math.max(width, rowLength);
+                ++height;
+                rowLength = 0;
+            } else if (value != CARRIAGE_RETURN || (i + 1 < end && buffer.get(i + 1) != LINE_FEED)) {
+                ++rowLength;
+            }
+        }
+        if (rowLength > 0) {
+            width = Math.max(width, rowLength);
+            ++height;
+        }
+        if (height == 0 || width > Game.MAX_FIELD_WIDTH || height > Game.MAX_FIELD_HEIGHT) {
+            return false;
+        }
+
+        // Cells and objects
+        final Field field = new Field();
+        field.setSize(width, height);
+        final PointIndex.Builder boxes = new PointIndex.Builder();
+        final PointIndex.Builder targetPoints = new PointIndex.Builder();
+        int moleX = -1;
+        int moleY = -1;
+        int x = 0;
+        int y = 0;
+        for (int i = start; i < end; ++i) {
+            final byte value = buffer.get(i);
+            if (value == LINE_FEED) {
+                ++y;
+                x = 0;
+                continue;
+            }
+            if (value == CARRIAGE_RETURN && (i + 1 == end || buffer.get(i + 1) == LINE_FEED)) {
+                continue;
+            }
+            final int index = y * width + x;
+            switch (Game.CellDataByte.fromChar((char) (value & 0xFF))) {
+                case WALL:
+                    field.setType(index, Cell.Type.WALL);
+                    break;
+                case EMPTY_FLOOR:
+                    field.setType(index, Cell.Type.FLOOR);
+                    break;
+                case MOLE:
+                    field.setType(index, Cell.Type.FLOOR);
+                    moleX = x;
+                    moleY = y;
+                    break;
+                case INACTIVE_BOX:
+                    field.setType(index, Cell.Type.FLOOR);
+                    boxes.add(x, y);
+                    break;
+                case ACTIVE_BOX:
+                    field.setType(index, Cell.Type.FLOOR);
+                    boxes.add(x, y);
+                    targetPoints.add(x, y);
+                    break;
+                case TARGET_POINT:
+                    field.setType(index, Cell.Type.FLOOR);
+                    targetPoints.add(x, y);
+                    break;
+                default:
+                    // Empty and unknown cells stay NULL
+                    break;
+            }
+            ++x;
+        }
+        buffer.position(end);
+
+        game.setLevel(field, (moleX < 0) ? null : new Point(moleX, moleY), boxes.build(), targetPoints.build());
+        return true;
+    }
+
+    private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private LevelCodec() {
+    }
+
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Dimension;
+
+/**
+ * The {@LevelHash} calculates identity of a level: a 64-bit hash that doesn't
+ * depend on empty margins of the field and on rotations and reflections of the
+ * level. The level is trimmed to the bounding box of its non-empty cells and
+ * hashed in all 8 orientations, the minimal hash is the result. Cells are
+ * hashed by their file bytes (see {@LevelCodec}), so the mole, boxes and target
+ * points are taken into account.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public final class LevelHash {
+    // Hash of the field and the initial state of the level (moves don't change it)
+    public static long compute(Game game) {
+        final Dimension fieldSize = game.getFieldSize();
+        final byte empty = Game.CellDataByte.EMPTY.toByte();
+
+        // Bounding box of non-empty cells
+        int left = fieldSize.width;
+        int top = fieldSize.height;
+        int right = -1;
+        int bottom = -1;
+        for (int y = 0; y < fieldSize.height; ++y) {
+            for (int x = 0; x < fieldSize.width; ++x) {
+                if (game.getInitialDataByte(x, y) != empty) {
+                    left = Math.min(left, x);
+                    top = Math.min(top, y);
+                    right = Math.max(right, x);
+                    bottom = Math.max(bottom, y);
+                }
+            }
+        }
+        if (right < 0) {
+            return hashCells(new byte[0], 0, 0, 0);
+        }
+
+        final int width = right - left + 1;
+        final int height = bottom - top + 1;
+        final byte[] cells = new byte[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                cells[y * width + x] = game.getInitialDataByte(left + x, top + y);
+            }
+        }
+
+        long result = Long.MAX_VALUE;
+        for (int orientation = 0; orientation < ORIENTATION_COUNT; ++orientation) {
+            result = Math.min(result, hashCells(cells, width, height, orientation));
+        }
+        return result;
+    }
+
+    // Hashes the cells as if they were transformed. Bits of the orientation: 1 -
+    // mirror columns, 2 - mirror rows, 4 - swap rows and columns (so all
+    // rotations and reflections are covered)
+    private static long hashCells(byte[] cells, int width, int height, int orientation) {
+        final boolean mirrorX = (orientation & 1) != 0;
+        final boolean mirrorY = (orientation & 2) != 0;
+        final boolean transpose = (orientation & 4) != 0;
+        final int hashedWidth = transpose ? height : width;
+        final int hashedHeight = transpose ? width : height;
+
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ hashedWidth) * FNV_PRIME;
+        hash = (hash ^ hashedHeight) * FNV_PRIME;
+        for (int hashedY = 0; hashedY < hashedHeight; ++hashedY) {
+            for (int hashedX = 0; hashedX < hashedWidth; ++hashedX) {
+                int x = transpose ? hashedY : hashedX;
+                int y = transpose ? hashedX : hashedY;
+                if (mirrorX) {
+                    x = width - 1 - x;
+                }
+                if (mirrorY) {
+                    y = height - 1 - y;
+                }
+                hash = (hash ^ cells[y * width + x]) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    private LevelHash() {
+    }
+
+    private static final int ORIENTATION_COUNT = 8;
+    // 64-bit FNV-1a
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * The {@LevelPrefetcher} prepares the level which is going to be played next
+ * while the current one is played: the level is loaded and the visible part
+ * of its static layer is rendered on a background thread. Only one level is
+ * prepared at a time. Methods have to be called on the event dispatch thread.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class LevelPrefetcher {
+    public static final class PreparedLevel {
+        public Game getGame() {
+            return game;
+        }
+
+        // May be null if the field couldn't be laid out
+        public ChunkCache getChunkCache() {
+            return chunkCache;
+        }
+
+        private PreparedLevel(Game game, ChunkCache chunkCache) {
+            this.game = game;
+            this.chunkCache = chunkCache;
+        }
+
+        private final Game game;
+        private final ChunkCache chunkCache;
+    }
+
+    // Starts preparing the level for a game panel with the available area (see
+    // GamePanelBase.getAvailableArea()). The previous preparation is cancelled
+    public void prefetch(int levelId, Supplier<Game> loader, Rectangle availableArea,
+            GraphicsConfiguration configuration) {
+        cancel();
+        final Rectangle area = (Rectangle) availableArea.clone();
+        preparedLevelId = levelId;
+        preparation = executor.submit(() -> {
+            final Game game = loader.get();
+            if (game == null) {
+                return null;
+            }
+            final ChunkCache chunkCache = GamePanelBase.prepareChunkCache(game, area, configuration);
+            return new PreparedLevel(game, chunkCache);
+        });
+    }
+
+    // Returns the prepared level and forgets it. If the level is still being
+    // prepared, waits for it a little (the low priority thread may not even have
+    // started), then cancels it. Returns null if another level has been
+    // prefetched, the preparation has failed or hasn't been finished in time, the
+    // level has to be loaded by the caller then
+    public PreparedLevel take(int levelId) {
+        if (preparation == null || preparedLevelId != levelId) {
+            return null;
+        }
+        final Future<PreparedLevel> takenPreparation = preparation;
+        preparation = null;
+        try {
+            return takenPreparation.get(TAKE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException exception) {
+            takenPreparation.cancel(true);
+        } catch (ExecutionException | CancellationException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    public void cancel() {
+        if (preparation != null) {
+            preparation.cancel(true);
+            preparation = null;
+        }
+    }
+
+    private Future<PreparedLevel> preparation = null;
+    private int preparedLevelId = 0;
+    // Longer waits would freeze the UI more than loading the level does
+    private static final long TAKE_TIMEOUT_MS = 20;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LevelPrefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+
+/**
+ * The {@LevelThumbnail} renders a small preview of a level without any window
+ * (it can be called on any thread). Every pixel of the preview takes color of
+ * the cell under it, so a level of any size costs the same.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public final class LevelThumbnail {
+    // The preview keeps proportions of the level and fits the size. Empty cells
+    // are transparent
+    public static BufferedImage render(Game game, int maxWidth, int maxHeight) {
+        final Dimension fieldSize = game.getFieldSize();
+        if (fieldSize.width == 0 || fieldSize.height == 0) {
+            return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        }
+        final double scale = Math.min((double) maxWidth / fieldSize.width, (double) maxHeight / fieldSize.height);
+        final int width = Math.max(1, (int) Math.round(fieldSize.width * scale));
+        final int height = Math.max(1, (int) Math.round(fieldSize.height * scale));
+
+        final int[] pixels = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            final int cellY = (int) ((long) y * fieldSize.height / height);
+            for (int x = 0; x < width; ++x) {
+                final int cellX = (int) ((long) x * fieldSize.width / width);
+                pixels[y * width + x] = getColor(game.getDataByte(cellX, cellY));
+            }
+        }
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+
+    private static int getColor(byte dataByte) {
+        switch (Game.CellDataByte.fromChar((char) (dataByte & 0xFF))) {
+            case WALL:
+                return WALL_COLOR;
+            case EMPTY_FLOOR:
+                return FLOOR_COLOR;
+            case MOLE:
+                return MOLE_COLOR;
+            case INACTIVE_BOX:
+                return BOX_COLOR;
+            case ACTIVE_BOX:
+                return ACTIVE_BOX_COLOR;
+            case TARGET_POINT:
+                return TARGET_POINT_COLOR;
+            default:
+                return EMPTY_COLOR;
+        }
+    }
+
+    private LevelThumbnail() {
+    }
+
+    // ARGB colors of cells
+    private static final int EMPTY_COLOR = 0x00000000;
+    private static final int WALL_COLOR = 0xFF5A4632;
+    private static final int FLOOR_COLOR = 0xFFD8C8A8;
+    private static final int MOLE_COLOR = 0xFF303030;
+    private static final int BOX_COLOR = 0xFFB07030;
+    private static final int ACTIVE_BOX_COLOR = 0xFF40A040;
+    private static final int TARGET_POINT_COLOR = 0xFFE04040;
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@PointIndex} is an immutable set of field cells (e.g. boxes or target
+ * points). The cells are kept as a dense list (for iterating) and as a sorted
+ * array of cell keys (for binary search lookups). Both grow with the count of
+ * points, not with the size of the field, so a change that copies them is
+ * cheap for the few points a level has. A change creates a new index, the
+ * points of which mustn't be changed.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public final class PointIndex {
+    public static final PointIndex EMPTY = new PointIndex(Collections.<Point>emptyList(), new int[0]);
+
+    // Collects points without intermediate lists (e.g. while a level is parsed)
+    static final class Builder {
+        // Repeated points are skipped
+        void add(int x, int y) {
+            if (!isValid(x, y)) {
+                return;
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * keys.length);
+            }
+            keys[count++] = toKey(x, y);
+            points.add(new Point(x, y));
+        }
+
+        PointIndex build() {
+            return create(points, Arrays.copyOf(keys, count));
+        }
+
+        private final List<Point> points = new ArrayList<Point>();
+        private int[] keys = new int[16];
+        private int count = 0;
+    }
+
+    // Copies the points, repeated points are skipped
+    public static PointIndex of(List<Point> points) {
+        List<Point> newPoints = new ArrayList<Point>(points.size());
+        int[] newKeys = new int[points.size()];
+        int count = 0;
+        for (Point point : points) {
+            if (isValid(point.x, point.y)) {
+                newKeys[count++] = toKey(point.x, point.y);
+                newPoints.add((Point) point.clone());
+            }
+        }
+        return create(newPoints, Arrays.copyOf(newKeys, count));
+    }
+
+    // Returns unmodifiable list
+    public List<Point> getPoints() {
+        return points;
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    public boolean contains(int x, int y) {
+        return isValid(x, y) && Arrays.binarySearch(keys, toKey(x, y)) >= 0;
+    }
+
+    public boolean contains(Point point) {
+        return (point != null) && contains(point.x, point.y);
+    }
+
+    // Returns true if both indexes have the same points (the order isn't taken into
+    // account)
+    public boolean hasSamePoints(PointIndex other) {
+        return (this == other) || Arrays.equals(keys, other.keys);
+    }
+
+    // Returns the same index if nothing has been changed
+    public PointIndex with(Point point, boolean enable) {
+        if (point == null || !isValid(point.x, point.y)) {
+            return this;
+        }
+        final int key = toKey(point.x, point.y);
+        final int position = Arrays.binarySearch(keys, key);
+        if ((position >= 0) == enable) {
+            return this;
+        }
+        List<Point> newPoints = null;
+        int[] newKeys = null;
+        if (enable) {
+            newPoints = new ArrayList<Point>(points.size() + 1);
+            newPoints.addAll(points);
+            newPoints.add((Point) point.clone());
+            newKeys = insertKey(keys, -position - 1, key);
+        } else {
+            newPoints = new ArrayList<Point>(points.size());
+            for (Point existing : points) {
+                if (existing.x != point.x || existing.y != point.y) {
+                    newPoints.add(existing);
+                }
+            }
+            newKeys = removeKey(keys, position);
+        }
+        return new PointIndex(Collections.unmodifiableList(newPoints), newKeys);
+    }
+
+    // Replaces the point keeping the order of points. The target cell has to be
+    // free
+    public PointIndex withMoved(Point from, Point to) {
+        List<Point> newPoints = new ArrayList<Point>(points);
+        for (int i = 0; i < newPoints.size(); ++i) {
+            final Point point = newPoints.get(i);
+            if (point.x == from.x && point.y == from.y) {
+                newPoints.set(i, to);
+                break;
+            }
+        }
+        final int fromPosition = Arrays.binarySearch(keys, toKey(from.x, from.y));
+        final int[] newKeys = (fromPosition >= 0) ? removeKey(keys, fromPosition) : keys;
+        final int toKey = toKey(to.x, to.y);
+        return new PointIndex(Collections.unmodifiableList(newPoints),
+                insertKey(newKeys, -Arrays.binarySearch(newKeys, toKey) - 1, toKey));
+    }
+
+    // Removes all points of the cells (indexes are row by row in a field of the
+    // width) and adds them again if 'enable' is true
+    public PointIndex withCells(int[] indexes, int count, int width, boolean enable) {
+        int[] changedKeys = new int[count];
+        for (int i = 0; i < count; ++i) {
+            changedKeys[i] = toKey(indexes[i] % width, indexes[i] / width);
+        }
+        Arrays.sort(changedKeys);
+        changedKeys = withoutRepeats(changedKeys, changedKeys.length);
+        if (!enable && !intersects(changedKeys)) {
+            return this;
+        }
+        List<Point> newPoints = new ArrayList<Point>(points.size() + (enable ? count : 0));
+        for (Point point : points) {
+            if (Arrays.binarySearch(changedKeys, toKey(point.x, point.y)) < 0) {
+                newPoints.add(point);
+            }
+        }
+        // The kept keys are merged with the changed ones (both are sorted)
+        final int[] newKeys = new int[keys.length + (enable ? changedKeys.length : 0)];
+        int newCount = 0;
+        int changed = 0;
+        for (int key : keys) {
+            while (changed < changedKeys.length && changedKeys[changed] < key) {
+                if (enable) {
+                    newKeys[newCount++] = changedKeys[changed];
+                }
+                ++changed;
+            }
+            if (changed < changedKeys.length && changedKeys[changed] == key) {
+                continue;
+            }
+            newKeys[newCount++] = key;
+        }
+        if (enable) {
+            for (int key : changedKeys) {
+                newPoints.add(new Point(key % KEY_STRIDE, key / KEY_STRIDE));
+            }
+            // Changed keys after the last kept one
+            while (changed < changedKeys.length) {
+                newKeys[newCount++] = changedKeys[changed++];
+            }
+        }
+        return new PointIndex(Collections.unmodifiableList(newPoints), Arrays.copyOf(newKeys, newCount));
+    }
+
+    // Returns the same index if all points are inside the field
+    public PointIndex withoutOutside(Dimension fieldSize) {
+        List<Point> newPoints = null;
+        for (int i = 0; i < points.size(); ++i) {
+            final Point point = points.get(i);
+            final boolean outside = (point.x >= fieldSize.width) || (point.y >= fieldSize.height);
+            if (outside && newPoints == null) {
+                newPoints = new ArrayList<Point>(points.subList(0, i));
+            }
+            if (!outside && newPoints != null) {
+                newPoints.add(point);
+            }
+        }
+        if (newPoints == null) {
+            return this;
+        }
+        final int[] newKeys = new int[newPoints.size()];
+        int count = 0;
+        for (int key : keys) {
+            if (key % KEY_STRIDE < fieldSize.width && key / KEY_STRIDE < fieldSize.height) {
+                newKeys[count++] = key;
+            }
+        }
+        return new PointIndex(Collections.unmodifiableList(newPoints), newKeys);
+    }
+
+    private PointIndex(List<Point> points, int[] keys) {
+        this.points = points;
+        this.keys = keys;
+    }
+
+    // Sorts the keys and drops repeated points (the first one is kept)
+    private static PointIndex create(List<Point> points, int[] keys) {
+        final int[] sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+        final int[] uniqueKeys = withoutRepeats(sortedKeys, sortedKeys.length);
+        if (uniqueKeys.length == points.size()) {
+            return new PointIndex(Collections.unmodifiableList(points), uniqueKeys);
+        }
+        final boolean[] added = new boolean[uniqueKeys.length];
+        List<Point> uniquePoints = new ArrayList<Point>(uniqueKeys.length);
+        for (Point point : points) {
+            final int position = Arrays.binarySearch(uniqueKeys, toKey(point.x, point.y));
+            if (!added[position]) {
+                added[position] = true;
+                uniquePoints.add(point);
+            }
+        }
+        return new PointIndex(Collections.unmodifiableList(uniquePoints), uniqueKeys);
+    }
+
+    // Returns the first 'count' sorted keys without repeats (the same array if
+    // there are none)
+    private static int[] withoutRepeats(int[] sortedKeys, int count) {
+        int uniqueCount = 0;
+        for (int i = 0; i < count; ++i) {
+            if (uniqueCount == 0 || sortedKeys[uniqueCount - 1] != sortedKeys[i]) {
+                sortedKeys[uniqueCount++] = sortedKeys[i];
+            }
+        }
+        return (uniqueCount == sortedKeys.length) ? sortedKeys : Arrays.copyOf(sortedKeys, uniqueCount);
+    }
+
+    private static int[] insertKey(int[] keys, int position, int key) {
+        final int[] newKeys = new int[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, position);
+        newKeys[position] = key;
+        System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+        return newKeys;
+    }
+
+    private static int[] removeKey(int[] keys, int position) {
+        final int[] newKeys = new int[keys.length - 1];
+        System.arraycopy(keys, 0, newKeys, 0, position);
+        System.arraycopy(keys, position + 1, newKeys, position, keys.length - position - 1);
+        return newKeys;
+    }
+
+    private boolean intersects(int[] sortedKeys) {
+        for (int key : sortedKeys) {
+            if (Arrays.binarySearch(keys, key) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isValid(int x, int y) {
+        return (x >= 0) && (y >= 0) && (x < KEY_STRIDE) && (y < Game.MAX_FIELD_HEIGHT);
+    }
+
+    // Key of a cell doesn't depend on the field width, so resizing keeps the keys.
+    // Keys are ordered row by row
+    private static int toKey(int x, int y) {
+        return y * KEY_STRIDE + x;
+    }
+
+    private final List<Point> points;
+    // Keys of the points in ascending order
+    private final int[] keys;
+    private static final int KEY_STRIDE = Game.MAX_FIELD_WIDTH;
+}
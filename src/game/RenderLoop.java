@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Toolkit;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+/**
+ * The {@RenderLoop} drives active rendering of a component: a dedicated thread
+ * wakes up once per frame, lets the client advance its state on the event
+ * dispatch thread and paints the component immediately if something changed.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class RenderLoop implements Runnable {
+    public interface Client {
+        // Calls on the event dispatch thread once per frame. Returns true if the
+        // frame has to be painted
+        public boolean onFrame(long frameTimeNanos);
+    }
+
+    public RenderLoop(JComponent component, Client client, int targetFps) {
+        this.component = component;
+        this.client = client;
+        frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, targetFps);
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        final Thread newThread = new Thread(this, "RenderLoop");
+        newThread.setDaemon(true);
+        thread = newThread;
+        newThread.start();
+    }
+
+    // Doesn't wait for the thread: it may be blocked by the event dispatch thread
+    // that calls this method. The old thread exits on its own, a loop started
+    // again right away runs on a new one
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    @Override
+    public void run() {
+        final Thread currentThread = Thread.currentThread();
+        long nextFrameTime = System.nanoTime();
+        while (thread == currentThread) {
+            try {
+                SwingUtilities.invokeAndWait(() -> processFrame(currentThread));
+                waitUntil(nextFrameTime += frameIntervalNanos);
+            } catch (InterruptedException e) {
+                break;
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace();
+            }
+            // We have missed a few frames. Don't try to catch up, just skip them
+            final long now = System.nanoTime();
+            if (now - nextFrameTime > frameIntervalNanos) {
+                nextFrameTime = now;
+            }
+        }
+    }
+
+    // The frame is skipped if the loop has been stopped while it was waiting for
+    // the event dispatch thread
+    private void processFrame(Thread loopThread) {
+        if (thread != loopThread || !component.isShowing()) {
+            return;
+        }
+        if (client.onFrame(System.nanoTime())) {
+            component.paintImmediately(0, 0, component.getWidth(), component.getHeight());
+            // Flushes the pipeline, otherwise some platforms buffer the frame
+            Toolkit.getDefaultToolkit().sync();
+        }
+    }
+
+    // Sleeps the main part of the interval and yields the rest of it: the
+    // scheduler granularity is too coarse to hit the frame boundary with sleep()
+    private static void waitUntil(long deadlineNanos) throws InterruptedException {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining > SPIN_THRESHOLD_NANOS) {
+            TimeUnit.NANOSECONDS.sleep(remaining - SPIN_THRESHOLD_NANOS);
+        }
+        // Times are compared by their difference, so an overflow of nanoTime()
+        // doesn't break it
+        while (System.nanoTime() - deadlineNanos < 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.yield();
+        }
+    }
+
+    private final JComponent component;
+    private final Client client;
+    private final long frameIntervalNanos;
+    // The loop runs while it's this thread (see run())
+    private volatile Thread thread = null;
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+}
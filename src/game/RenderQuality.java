@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package game;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+/**
+ * The {@RenderQuality} is a profile of rendering hints used to draw a field.
+ * Hints of a profile are created once and only copied to the graphics on
+ * paint. QUALITY has the hints the field has always been drawn with. AUTO
+ * starts with it and lets the panel choose a faster profile when painting
+ * doesn't fit the frame budget.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public enum RenderQuality {
+    AUTO, SPEED, BALANCED, QUALITY;
+
+    // Applies hints of the profile to the graphics. AUTO applies hints of the best
+    // profile, the panel replaces it with the chosen one before painting
+    public void apply(Graphics2D graphics) {
+        graphics.setRenderingHints(getHints());
+    }
+
+    // Returns the next profile in the order they are switched by the user
+    public RenderQuality next() {
+        final RenderQuality[] values = values();
+        return values[(ordinal() + 1) % values.length];
+    }
+
+    // Returns the faster profile or this one if it's the fastest
+    public RenderQuality faster() {
+        switch (this) {
+            case AUTO:
+            case QUALITY:
+                return BALANCED;
+            default:
+                return SPEED;
+        }
+    }
+
+    private RenderingHints getHints() {
+        switch (this) {
+            case SPEED:
+                return SPEED_HINTS;
+            case BALANCED:
+                return BALANCED_HINTS;
+            default:
+                return QUALITY_HINTS;
+        }
+    }
+
+    private static RenderingHints createHints(Object antialiasing, Object rendering, Object interpolation,
+            Object alphaInterpolation, Object colorRendering) {
+        RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, antialiasing);
+        hints.put(RenderingHints.KEY_RENDERING, rendering);
+        hints.put(RenderingHints.KEY_INTERPOLATION, interpolation);
+        hints.put(RenderingHints.KEY_ALPHA_INTERPOLATION, alphaInterpolation);
+        hints.put(RenderingHints.KEY_COLOR_RENDERING, colorRendering);
+        return hints;
+    }
+
+    // Sprites and chunks are copied 1:1 in any profile, hints matter for shapes
+    // and for images drawn at another size (e.g. chunks of another scale).
+    // QUALITY turns on only antialiasing and quality rendering, as painting did
+    // before the profiles, every next profile drops some of it
+    private static final RenderingHints SPEED_HINTS = createHints(RenderingHints.VALUE_ANTIALIAS_OFF,
+            RenderingHints.VALUE_RENDER_SPEED, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
+            RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+    private static final RenderingHints BALANCED_HINTS = createHints(RenderingHints.VALUE_ANTIALIAS_OFF,
+            RenderingHints.VALUE_RENDER_DEFAULT, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
+            RenderingHints.VALUE_ALPHA_INTERPOLATION_DEFAULT, RenderingHints.VALUE_COLOR_RENDER_DEFAULT);
+    private static final RenderingHints QUALITY_HINTS = createHints(RenderingHints.VALUE_ANTIALIAS_ON,
+            RenderingHints.VALUE_RENDER_QUALITY, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
+            RenderingHints.VALUE_ALPHA_INTERPOLATION_DEFAULT, RenderingHints.VALUE_COLOR_RENDER_DEFAULT);
+}
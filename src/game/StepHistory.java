@@ -19,7 +19,8 @@ package game;
 import java.util.ArrayList;
 
 /**
- * The {@StepHistory} class that saves actions and do undo()/redo().
+ * The {@StepHistory} class that saves actions and do undo()/redo(). States
+ * are immutable, so they are stored without copying.
  * 
  * @author olegshchepilov
  *
@@ -29,7 +30,7 @@ public class StepHistory {
 
     public void add(GameState state) {
         removeTail();
-        states.add((GameState) state.clone());
+        states.add(state);
         ++currentIndex;
     }
 
@@ -43,7 +44,7 @@ public class StepHistory {
             return null;
         }
         --currentIndex;
-        return (GameState) states.get(currentIndex).clone();
+        return states.get(currentIndex);
     }
 
     public boolean canRedo() {
@@ -55,7 +56,7 @@ public class StepHistory {
             return null;
         }
         ++currentIndex;
-        return (GameState) states.get(currentIndex).clone();
+        return states.get(currentIndex);
 
     }
 
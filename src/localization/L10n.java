@@ -40,6 +40,19 @@ public class L10n {
         EXIT,
         WIDTH,
         HEIGHT,
+        TOOL_PEN,
+        TOOL_FILL,
+        TOOL_RECTANGLE,
+        TOOL_LINE,
+        BADGE_CHECKING,
+        BADGE_SOLVABLE,
+        BADGE_UNSOLVABLE,
+        BADGE_UNKNOWN,
+        BADGE_NO_MOLE,
+        BADGE_TOO_FEW_BOXES,
+        BADGE_NOT_CLOSED,
+        BADGE_UNREACHABLE,
+        BADGE_DEAD_BOXES,
         SAVE,
         GO_BACK,
         DIALOG_OVERWRITE_CONFIRM_TITLE,
@@ -157,6 +170,149 @@ public class L10n {
                     default:
                         return "{Missing(" + locale + "):HEIGHT}";
                 }
+            case TOOL_PEN:
+                switch (locale) {
+                    case "en":
+                        return "Pen";
+                    case "ru":
+                        return "Карандаш";
+                    case "insl":
+                        return "Pero";
+                    default:
+                        return "{Missing(" + locale + "):TOOL_PEN}";
+                }
+            case TOOL_FILL:
+                switch (locale) {
+                    case "en":
+                        return "Fill";
+                    case "ru":
+                        return "Заливка";
+                    case "insl":
+                        return "Zalivanje";
+                    default:
+                        return "{Missing(" + locale + "):TOOL_FILL}";
+                }
+            case TOOL_RECTANGLE:
+                switch (locale) {
+                    case "en":
+                        return "Rectangle";
+                    case "ru":
+                        return "Прямоугольник";
+                    case "insl":
+                        return "Pravougolnik";
+                    default:
+                        return "{Missing(" + locale + "):TOOL_RECTANGLE}";
+                }
+            case TOOL_LINE:
+                switch (locale) {
+                    case "en":
+                        return "Line";
+                    case "ru":
+                        return "Линия";
+                    case "insl":
+                        return "Linija";
+                    default:
+                        return "{Missing(" + locale + "):TOOL_LINE}";
+                }
+            case BADGE_CHECKING:
+                switch (locale) {
+                    case "en":
+                        return "Checking...";
+                    case "ru":
+                        return "Проверка...";
+                    case "insl":
+                        return "Proverka...";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_CHECKING}";
+                }
+            case BADGE_SOLVABLE:
+                switch (locale) {
+                    case "en":
+                        return "Solvable";
+                    case "ru":
+                        return "Решаемый";
+                    case "insl":
+                        return "Resivy";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_SOLVABLE}";
+                }
+            case BADGE_UNSOLVABLE:
+                switch (locale) {
+                    case "en":
+                        return "Unsolvable";
+                    case "ru":
+                        return "Нерешаемый";
+                    case "insl":
+                        return "Neresivy";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_UNSOLVABLE}";
+                }
+            case BADGE_UNKNOWN:
+                switch (locale) {
+                    case "en":
+                        return "Not solved";
+                    case "ru":
+                        return "Не решён";
+                    case "insl":
+                        return "Ne resen";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_UNKNOWN}";
+                }
+            case BADGE_NO_MOLE:
+                switch (locale) {
+                    case "en":
+                        return "No mole";
+                    case "ru":
+                        return "Нет крота";
+                    case "insl":
+                        return "Bez krota";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_NO_MOLE}";
+                }
+            case BADGE_TOO_FEW_BOXES:
+                switch (locale) {
+                    case "en":
+                        return "Few boxes";
+                    case "ru":
+                        return "Мало ящиков";
+                    case "insl":
+                        return "Malo skrinej";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_TOO_FEW_BOXES}";
+                }
+            case BADGE_NOT_CLOSED:
+                switch (locale) {
+                    case "en":
+                        return "Open walls";
+                    case "ru":
+                        return "Стены открыты";
+                    case "insl":
+                        return "Otvorene steny";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_NOT_CLOSED}";
+                }
+            case BADGE_UNREACHABLE:
+                switch (locale) {
+                    case "en":
+                        return "Unreachable";
+                    case "ru":
+                        return "Недоступно";
+                    case "insl":
+                        return "Nedostupno";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_UNREACHABLE}";
+                }
+            case BADGE_DEAD_BOXES:
+                switch (locale) {
+                    case "en":
+                        return "Dead boxes";
+                    case "ru":
+                        return "Мёртвые ящики";
+                    case "insl":
+                        return "Mrtve skrinje";
+                    default:
+                        return "{Missing(" + locale + "):BADGE_DEAD_BOXES}";
+                }
             case SAVE:
                 switch (locale) {
                     case "en":
@@ -16,9 +16,12 @@
 
 package menu;
 
+import java.awt.Dimension;
+import java.awt.Image;
 import java.util.ArrayList;
 import java.util.List;
 
+import editor.LevelIndex;
 import editor.LevelStorage;
 import localization.L10n;
 
@@ -43,6 +46,10 @@ public class LevelMenuPanel extends MenuPanelBase {
 
     private Callback callback = null;
     private static final int GO_BACK = 0;
+    private static final Dimension THUMBNAIL_SIZE = new Dimension(64, 48);
+    // Previews are shared by all level menus
+    private static final LevelThumbnailCache thumbnails = new LevelThumbnailCache(THUMBNAIL_SIZE.width,
+            THUMBNAIL_SIZE.height);
     private static final long serialVersionUID = 1L;
 
     @Override
@@ -50,6 +57,28 @@ public class LevelMenuPanel extends MenuPanelBase {
         callback.onLevelMenuCommandExit();
     }
 
+    // There may be thousands of levels
+    @Override
+    protected boolean isVirtualList() {
+        return true;
+    }
+
+    @Override
+    protected Dimension getItemImageSize() {
+        return THUMBNAIL_SIZE;
+    }
+
+    // The preview is loaded in the background, the menu is repainted when it's
+    // ready
+    @Override
+    protected Image getItemImage(Integer id) {
+        final LevelIndex.Entry entry = (id == GO_BACK) ? null : LevelStorage.getPredefinedEntry(id);
+        if (entry == null) {
+            return null;
+        }
+        return thumbnails.get(entry.getHash(), () -> LevelStorage.loadPredefined(id), this::repaint);
+    }
+
     @Override
     protected List<Integer> getItems() {
         final List<Integer> items = new ArrayList<Integer>();
@@ -76,7 +105,13 @@ public class LevelMenuPanel extends MenuPanelBase {
 
     @Override
     protected String convertIdToString(Integer index) {
-        return (index == 0) ? L10n.get(L10n.Id.GO_BACK) : "Level " + index.toString();
+        if (index == 0) {
+            return L10n.get(L10n.Id.GO_BACK);
+        }
+        // Solved levels show the best step count
+        final LevelIndex.Entry entry = LevelStorage.getPredefinedEntry(index);
+        final int bestStepCount = (entry == null) ? 0 : LevelStorage.getBestStepCount(entry.getHash());
+        return "Level " + index.toString() + ((bestStepCount > 0) ? " (" + bestStepCount + ")" : "");
     }
 
 }
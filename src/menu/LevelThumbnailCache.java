@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package menu;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import game.Game;
+import game.LevelThumbnail;
+
+/**
+ * The {@LevelThumbnailCache} keeps level previews of one size. A requested
+ * preview is read from the disk cache or rendered on a background pool, then it
+ * stays in memory (the least recently used previews are dropped when there are
+ * too many) and on the disk (files are named by level hash). The newest
+ * requests are processed first, so previews of visible items are ready before
+ * the ones that have been scrolled away.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class LevelThumbnailCache {
+    public LevelThumbnailCache(int width, int height) {
+        this.width = width;
+        this.height = height;
+        directory = Paths.get(System.getProperty("user.home"), CACHE_DIRECTORY, width + "x" + height);
+    }
+
+    // Returns the preview if it's in memory. Otherwise starts loading it (the level
+    // is taken from the supplier on a pool thread) and calls 'onReady' on the event
+    // dispatch thread when it's done. Has to be called on the event dispatch thread
+    public BufferedImage get(long levelHash, Supplier<Game> levelSupplier, Runnable onReady) {
+        final BufferedImage image = images.get(levelHash);
+        if (image != null || pendingHashes.putIfAbsent(levelHash, Boolean.TRUE) != null) {
+            return image;
+        }
+        executor.execute(() -> {
+            final BufferedImage loadedImage = load(levelHash, levelSupplier);
+            SwingUtilities.invokeLater(() -> {
+                pendingHashes.remove(levelHash);
+                if (loadedImage != null) {
+                    images.put(levelHash, loadedImage);
+                    onReady.run();
+                }
+            });
+        });
+        return null;
+    }
+
+    // Runs on a pool thread
+    private BufferedImage load(long levelHash, Supplier<Game> levelSupplier) {
+        final Path file = directory.resolve(Long.toHexString(levelHash) + ".png");
+        try {
+            if (Files.exists(file)) {
+                final BufferedImage image = ImageIO.read(file.toFile());
+                if (image != null) {
+                    return image;
+                }
+            }
+        } catch (IOException exception) {
+            // A broken file is rendered again
+            exception.printStackTrace();
+        }
+
+        final Game game = levelSupplier.get();
+        if (game == null) {
+            return null;
+        }
+        final BufferedImage image = LevelThumbnail.render(game, width, height);
+        try {
+            // The file is written under another name first, so a reader never sees a
+            // part of it
+            Files.createDirectories(directory);
+            final Path temporaryFile = Files.createTempFile(directory, "thumbnail", ".tmp");
+            ImageIO.write(image, "png", temporaryFile.toFile());
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        return image;
+    }
+
+    private final int width;
+    private final int height;
+    private final Path directory;
+    // Access order, so the first entry is the least recently used one
+    private final Map<Long, BufferedImage> images = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_MEMORY_IMAGE_COUNT;
+        }
+
+        private static final long serialVersionUID = 1L;
+    };
+    private final Map<Long, Boolean> pendingHashes = new ConcurrentHashMap<Long, Boolean>();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0,
+            TimeUnit.MILLISECONDS, new LinkedBlockingDeque<Runnable>() {
+                // Tasks are taken from the head, so the newest task goes first
+                @Override
+                public boolean offer(Runnable task) {
+                    return offerFirst(task);
+                }
+
+                private static final long serialVersionUID = 1L;
+            }, runnable -> {
+                Thread thread = new Thread(runnable, "LevelThumbnail");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+    private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int MAX_MEMORY_IMAGE_COUNT = 512;
+    private static final String CACHE_DIRECTORY = ".wisemole/thumbnails";
+}
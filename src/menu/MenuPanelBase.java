@@ -29,6 +29,8 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,13 +40,17 @@ import utils.ImageStorage;
 import utils.PanelUtils;
 
 /**
- * The {@MenuPanelBase} is a base panel for menu
+ * The {@MenuPanelBase} is a base panel for menu. A menu with many items (see
+ * {@isVirtualList}) is a scrollable list: all rows have the same height, only
+ * visible rows are measured and painted, and an item under a point is found by
+ * division.
  *
  * @author olegshchepilov
  *
  */
 
-public class MenuPanelBase extends PanelBase implements KeyListener, MouseListener, MouseMotionListener {
+public class MenuPanelBase extends PanelBase
+        implements KeyListener, MouseListener, MouseMotionListener, MouseWheelListener {
 
     public MenuPanelBase() {
     }
@@ -64,6 +70,11 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
         return this;
     }
 
+    @Override
+    public MouseWheelListener mouseWheelListener() {
+        return this;
+    }
+
     @Override
     public void keyTyped(KeyEvent e) {
     }
@@ -73,10 +84,22 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
         final int keyCode = e.getKeyCode();
         switch (keyCode) {
             case KeyEvent.VK_UP:
-                moveSelection(true);
+                moveSelection(-1);
                 break;
             case KeyEvent.VK_DOWN:
-                moveSelection(false);
+                moveSelection(1);
+                break;
+            case KeyEvent.VK_PAGE_UP:
+                moveSelection(-calcVisibleRowCount());
+                break;
+            case KeyEvent.VK_PAGE_DOWN:
+                moveSelection(calcVisibleRowCount());
+                break;
+            case KeyEvent.VK_HOME:
+                moveSelection(-getItemCount());
+                break;
+            case KeyEvent.VK_END:
+                moveSelection(getItemCount());
                 break;
             case KeyEvent.VK_ENTER:
                 commandSelection();
@@ -132,6 +155,15 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
         }
     }
 
+    // MouseWheelListener
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        if (isVirtualList()) {
+            scrollTo(firstVisibleRow + e.getWheelRotation() * WHEEL_SCROLL_ROWS);
+            repaint();
+        }
+    }
+
     @Override
     public void paintComponent(Graphics graphics) {
         super.paintComponent(graphics);
@@ -140,6 +172,11 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
             renderContent(graphics);
         }
 
+        if (isVirtualList()) {
+            paintVisibleRows(graphics);
+            return;
+        }
+
         final Point offset = calcContentOffset();
 
         for (int itemIndex = 0; itemIndex < renderedContent.itemBlocks.size(); ++itemIndex) {
@@ -149,20 +186,28 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
             graphics.drawString(block.string, offset.x + block.area.x, offset.y + block.area.y + block.area.height);
 
             if (selected) {
-                Image image = ImageStorage.getImage("arrow.png");
-                if (image != null) {
-                    final int orignalArrowWidth = image.getWidth(null);
-                    final int originalArrowHeight = image.getHeight(null);
-                    final int targetArrowHeight = block.area.height;
-                    final int targetArrowWidth = orignalArrowWidth * targetArrowHeight / originalArrowHeight;
-                    final int arrowX = offset.x - targetArrowWidth;
-                    final int arrowY = offset.y + block.area.y;
-                    graphics.drawImage(image, arrowX, arrowY, targetArrowWidth, targetArrowHeight, null);
-                }
+                paintArrow(graphics, offset.x, offset.y + block.area.y, block.area.height);
             }
         }
     }
 
+    // Returns true if the menu is a scrollable list where only visible rows are
+    // measured and painted
+    protected boolean isVirtualList() {
+        return false;
+    }
+
+    // Size of the box for images of a virtual list, the image is painted to the
+    // left of the text. Returns null if items have no images
+    protected Dimension getItemImageSize() {
+        return null;
+    }
+
+    // Called for visible items only. Returns null if the image isn't ready
+    protected Image getItemImage(Integer id) {
+        return null;
+    }
+
     private class ItemBlock {
         Rectangle area = null;
         int id = -1;
@@ -173,19 +218,49 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
         boolean rendered = false;
         List<ItemBlock> itemBlocks = new ArrayList<ItemBlock>();
         Dimension menuTotalSize = null;
+        // Virtual list: ids of all items, strings are made for visible rows only
+        List<Integer> itemIds = null;
+        int fontHeight = 0;
+        // Size of item images (zero if there are no images) and height of a row
+        // without the gap
+        Dimension imageSize = new Dimension(0, 0);
+        int itemHeight = 0;
+        // Distance from the left side of a row to its text
+        int textOffset = 0;
+        // Width of the widest row which has been visible, so the column doesn't
+        // move while scrolling unless a wider row appears
+        int columnWidth = 0;
     }
 
     private RenderedContent renderedContent = new RenderedContent();
     private int selectedItemIndex = 0;
+    private int firstVisibleRow = 0;
+    // Visible rows have to be scrolled to the selected item on the next paint
+    private boolean scrollToSelection = true;
+    private static final int ITEM_OFFSET = 10;
+    private static final int LIST_MARGIN = 40;
+    private static final int IMAGE_GAP = 10;
+    private static final int WHEEL_SCROLL_ROWS = 3;
     private static final long serialVersionUID = 1L;
 
     private void renderContent(Graphics graphics) {
         final List<Integer> items = getItems();
-        final int itemOffset = 10;
         renderedContent.menuTotalSize = new Dimension(0, 0);
         FontMetrics fontMetrics = graphics.getFontMetrics();
         final int fontHeight = FontUtils.getFontHeight(graphics.getFont());
-        
+        renderedContent.fontHeight = fontHeight;
+        if (isVirtualList()) {
+            final Dimension imageSize = getItemImageSize();
+            if (imageSize != null) {
+                renderedContent.imageSize = imageSize;
+                renderedContent.textOffset = imageSize.width + IMAGE_GAP;
+            }
+            renderedContent.itemHeight = Math.max(fontHeight, renderedContent.imageSize.height);
+            renderedContent.itemIds = items;
+            renderedContent.rendered = true;
+            return;
+        }
+
         for (Integer itemId : items) {
             ItemBlock block = new ItemBlock();
             block.id = itemId;
@@ -194,25 +269,116 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
             block.area = new Rectangle(0, renderedContent.menuTotalSize.height, width, fontHeight);
 
             renderedContent.menuTotalSize.width = Math.max(renderedContent.menuTotalSize.width, width);
-            renderedContent.menuTotalSize.height += fontHeight + itemOffset;
+            renderedContent.menuTotalSize.height += fontHeight + ITEM_OFFSET;
             renderedContent.itemBlocks.add(block);
         }
         renderedContent.rendered = true;
     }
 
-    private void moveSelection(boolean up) {
-        final int delta = up ? -1 : 1;
+    private void paintVisibleRows(Graphics graphics) {
+        final int rowHeight = renderedContent.itemHeight + ITEM_OFFSET;
+        final int visibleRowCount = calcVisibleRowCount();
+        if (scrollToSelection) {
+            scrollToSelection = false;
+            if (selectedItemIndex < firstVisibleRow) {
+                scrollTo(selectedItemIndex);
+            } else if (selectedItemIndex >= firstVisibleRow + visibleRowCount) {
+                scrollTo(selectedItemIndex - visibleRowCount + 1);
+            }
+        }
+        // The panel may have been resized
+        scrollTo(firstVisibleRow);
+
+        // Rows are measured before painting, because the column is centered
+        final int rowCount = Math.min(visibleRowCount, getItemCount() - firstVisibleRow);
+        final String[] strings = new String[rowCount];
+        final FontMetrics fontMetrics = graphics.getFontMetrics();
+        for (int row = 0; row < rowCount; ++row) {
+            strings[row] = convertIdToString(renderedContent.itemIds.get(firstVisibleRow + row));
+            renderedContent.columnWidth = Math.max(renderedContent.columnWidth, fontMetrics.stringWidth(strings[row]));
+        }
+
+        final Point offset = calcListOffset();
+        final int textY = (renderedContent.itemHeight - renderedContent.fontHeight) / 2;
+        for (int row = 0; row < rowCount; ++row) {
+            final boolean selected = (selectedItemIndex == firstVisibleRow + row);
+            final int rowY = offset.y + row * rowHeight;
+            if (renderedContent.textOffset > 0) {
+                final Image image = getItemImage(renderedContent.itemIds.get(firstVisibleRow + row));
+                if (image != null) {
+                    // The image is centered in its box
+                    final int imageX = offset.x + (renderedContent.imageSize.width - image.getWidth(null)) / 2;
+                    final int imageY = rowY + (renderedContent.itemHeight - image.getHeight(null)) / 2;
+                    graphics.drawImage(image, imageX, imageY, null);
+                }
+            }
+            graphics.setColor(selected ? Color.RED : Color.BLACK);
+            graphics.drawString(strings[row], offset.x + renderedContent.textOffset,
+                    rowY + textY + renderedContent.fontHeight);
+            if (selected) {
+                paintArrow(graphics, offset.x, rowY + textY, renderedContent.fontHeight);
+            }
+        }
+    }
+
+    // Paints the selection arrow to the left of the item
+    private void paintArrow(Graphics graphics, int itemX, int itemY, int itemHeight) {
+        Image image = ImageStorage.getImage("arrow.png");
+        if (image != null) {
+            final int orignalArrowWidth = image.getWidth(null);
+            final int originalArrowHeight = image.getHeight(null);
+            final int targetArrowHeight = itemHeight;
+            final int targetArrowWidth = orignalArrowWidth * targetArrowHeight / originalArrowHeight;
+            final int arrowX = itemX - targetArrowWidth;
+            graphics.drawImage(image, arrowX, itemY, targetArrowWidth, targetArrowHeight, null);
+        }
+    }
+
+    private int getItemCount() {
+        if (!renderedContent.rendered) {
+            return 0;
+        }
+        return isVirtualList() ? renderedContent.itemIds.size() : renderedContent.itemBlocks.size();
+    }
+
+    private int getItemId(int index) {
+        return isVirtualList() ? renderedContent.itemIds.get(index) : renderedContent.itemBlocks.get(index).id;
+    }
+
+    // Count of rows which fit the panel (all items if the menu isn't a list)
+    private int calcVisibleRowCount() {
+        if (!isVirtualList()) {
+            return getItemCount();
+        }
+        final int rowHeight = renderedContent.itemHeight + ITEM_OFFSET;
+        final int fittingRowCount = Math.max(1, (getHeight() - 2 * LIST_MARGIN + ITEM_OFFSET) / rowHeight);
+        return Math.min(fittingRowCount, getItemCount());
+    }
+
+    private void scrollTo(int row) {
+        firstVisibleRow = Math.max(0, Math.min(row, getItemCount() - calcVisibleRowCount()));
+    }
+
+    // Top left corner of the visible rows
+    private Point calcListOffset() {
+        final int rowHeight = renderedContent.itemHeight + ITEM_OFFSET;
+        final int listHeight = calcVisibleRowCount() * rowHeight;
+        final int listWidth = renderedContent.textOffset + renderedContent.columnWidth;
+        return new Point((getWidth() - listWidth) / 2, (getHeight() - listHeight) / 2);
+    }
+
+    private void moveSelection(int delta) {
         final int prevSelectedItemIndex = selectedItemIndex;
-        selectedItemIndex = Math.min(renderedContent.itemBlocks.size() - 1, Math.max(0, selectedItemIndex + delta));
+        selectedItemIndex = Math.min(getItemCount() - 1, Math.max(0, selectedItemIndex + delta));
         if (prevSelectedItemIndex != selectedItemIndex) {
+            scrollToSelection = true;
             repaint();
         }
     }
 
     private void commandSelection() {
-        if (selectedItemIndex >= 0 && selectedItemIndex < renderedContent.itemBlocks.size()) {
-            final ItemBlock block = renderedContent.itemBlocks.get(selectedItemIndex);
-            onCommand(block.id);
+        if (selectedItemIndex >= 0 && selectedItemIndex < getItemCount()) {
+            onCommand(getItemId(selectedItemIndex));
         }
     }
 
@@ -226,19 +392,40 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
     }
 
     private int getIndexOfItemUnderPoint(Point point) {
+        if (isVirtualList()) {
+            return getIndexOfRowUnderPoint(point);
+        }
         final Point offset = calcContentOffset();
-
         for (int index = 0; index < renderedContent.itemBlocks.size(); ++index) {
-            final ItemBlock block = renderedContent.itemBlocks.get(index);
-            Rectangle rect = (Rectangle) block.area.clone();
-            rect.translate(offset.x, offset.y);
-            if (rect.contains(point)) {
+            final Rectangle area = renderedContent.itemBlocks.get(index).area;
+            if (area.contains(point.x - offset.x, point.y - offset.y)) {
                 return index;
             }
         }
         return -1;
     }
 
+    // The row is calculated from the row height, the gap between rows isn't a
+    // part of any item
+    private int getIndexOfRowUnderPoint(Point point) {
+        if (!renderedContent.rendered) {
+            return -1;
+        }
+        final Point offset = calcListOffset();
+        final int rowHeight = renderedContent.itemHeight + ITEM_OFFSET;
+        final int x = point.x - offset.x;
+        final int y = point.y - offset.y;
+        final int listWidth = renderedContent.textOffset + renderedContent.columnWidth;
+        if (x < 0 || x >= listWidth || y < 0 || (y % rowHeight) >= renderedContent.itemHeight) {
+            return -1;
+        }
+        final int row = y / rowHeight;
+        if (row >= calcVisibleRowCount()) {
+            return -1;
+        }
+        return firstVisibleRow + row;
+    }
+
     private void setCursor(int cursorId) {
         setCursor(new Cursor(cursorId));
     }
@@ -260,6 +447,7 @@ public class MenuPanelBase extends PanelBase implements KeyListener, MouseListen
     protected void selectItem(int index) {
         if (selectedItemIndex != index) {
             selectedItemIndex = index;
+            scrollToSelection = true;
             repaint();
         }
     }
@@ -19,17 +19,26 @@ package utils;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Rectangle2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * The {@ImageStorage} is a set of font/text utils
+ * The {@FontUtils} is a set of font/text utils. Text is laid out once: glyph
+ * vectors are cached by font, text and render context (the least recently used
+ * ones are dropped), so measuring and drawing the same text again doesn't lay
+ * it out again.
  *
  * @author olegshchepilov
  *
  */
 
 public class FontUtils {
+    // Context of measurements: user space with antialiasing and fractional metrics
+    public static final FontRenderContext RENDER_CONTEXT = new FontRenderContext(new AffineTransform(), true, true);
 
     /*public static int getFontHeight(FontMetrics metrics) {
         final int originalFontHeight = metrics.getHeight();
@@ -39,16 +48,64 @@ public class FontUtils {
     }*/
 
     public static int getFontHeight(Font font) {
-    	AffineTransform affinetransform = new AffineTransform();
-        FontRenderContext frc = new FontRenderContext(affinetransform, true, true);
-        Rectangle2D rect = font.getStringBounds("Wp", frc);
-        return Math.abs((int) rect.getY());
+        return fontHeights.computeIfAbsent(font,
+                key -> Math.abs((int) key.getStringBounds("Wp", RENDER_CONTEXT).getY()));
     }
-    
+
     public static int calculateTextWidth(Font font, String text) {
-        AffineTransform affinetransform = new AffineTransform();
-        FontRenderContext frc = new FontRenderContext(affinetransform, true, true);
-        Rectangle2D rect = font.getStringBounds(text, frc);
-        return (int) rect.getWidth();
+        return (int) getGlyphVector(font, text, RENDER_CONTEXT).getLogicalBounds().getWidth();
+    }
+
+    // Returns laid out text for drawing with Graphics2D.drawGlyphVector(). The
+    // context has to be the one of the graphics (see getFontRenderContext()), the
+    // returned vector mustn't be changed
+    public static GlyphVector getGlyphVector(Font font, String text, FontRenderContext context) {
+        final TextKey key = new TextKey(font, text, context);
+        synchronized (glyphVectors) {
+            GlyphVector glyphVector = glyphVectors.get(key);
+            if (glyphVector == null) {
+                glyphVector = font.createGlyphVector(context, text);
+                glyphVectors.put(key, glyphVector);
+            }
+            return glyphVector;
+        }
+    }
+
+    private static final class TextKey {
+        TextKey(Font font, String text, FontRenderContext context) {
+            this.font = font;
+            this.text = text;
+            this.context = context;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof TextKey)) {
+                return false;
+            }
+            final TextKey key = (TextKey) other;
+            return font.equals(key.font) && text.equals(key.text) && context.equals(key.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(font, text, context);
+        }
+
+        private final Font font;
+        private final String text;
+        private final FontRenderContext context;
     }
+
+    private static final Map<Font, Integer> fontHeights = new ConcurrentHashMap<Font, Integer>();
+    private static final LinkedHashMap<TextKey, GlyphVector> glyphVectors = new LinkedHashMap<TextKey, GlyphVector>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TextKey, GlyphVector> eldest) {
+            return size() > MAX_GLYPH_VECTOR_COUNT;
+        }
+
+        private static final long serialVersionUID = 1L;
+    };
+    private static final int MAX_GLYPH_VECTOR_COUNT = 512;
 }
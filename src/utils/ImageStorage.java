@@ -16,16 +16,43 @@
 
 package utils;
 
+import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BaseMultiResolutionImage;
+import java.awt.image.BufferedImage;
+import java.awt.image.MultiResolutionImage;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import javax.imageio.ImageIO;
 
 /**
- * The {@ImageStorage} is a storage of images that are used in the application
+ * The {@ImageStorage} is a storage of images that are used in the application.
+ * It can be used from any thread. An image is decoded once however many threads
+ * request it at the same time: the first request starts decoding, the others
+ * wait for its result. Decoded images are kept while their total size fits the
+ * memory budget, then the least recently used ones are dropped (and decoded
+ * again when requested). A request of a decoded image doesn't lock: it only
+ * stamps the image, the stamps are sorted when a new image exceeds the budget.
+ * Sprites (images resized for a cell of the screen) are resampled once per size
+ * and device scale and kept within the same budget.
  *
  * @author olegshchepilov
  *
@@ -33,34 +60,228 @@ import javax.imageio.ImageIO;
 
 public class ImageStorage {
 
+    // Decodes the image on the calling thread if it isn't decoded yet. Returns null
+    // if the image can't be decoded
     static public Image getImage(String resourceId) {
-        Image result = getInstance().images.get(resourceId);
-        if (result != null) {
-            return result;
+        final Image image = getLoaded(resourceId);
+        return (image != null) ? image : await(load(resourceId, Runnable::run, () -> decode(resourceId)));
+    }
+
+    // Decodes the image on the decoding pool if it isn't decoded yet
+    static public CompletableFuture<Image> getImageAsync(String resourceId) {
+        return load(resourceId, decoder, () -> decode(resourceId));
+    }
+
+    // Returns the image resized to width x height. It's a multi-resolution image
+    // that has a variant for the device scale (e.g. 2.0 on HiDPI displays), so
+    // drawing it without size at a transform of the scale copies pixels 1:1.
+    // Returns null if the image can't be decoded
+    static public Image getSprite(String resourceId, int width, int height, double scale) {
+        if (width <= 0 || height <= 0) {
+            return null;
         }
-        result = getInstance().loadImage(resourceId);
-        getInstance().images.put(resourceId, result);
-        return result;
+        // Scales differ in fractions, so they are rounded to keep count of sprites low
+        final int scalePercent = Math.max(1, (int) Math.round(scale * 100));
+        final String spriteId = resourceId + '@' + width + 'x' + height + '@' + scalePercent;
+        final Image image = getLoaded(spriteId);
+        return (image != null) ? image
+                : await(load(spriteId, Runnable::run, () -> createSprite(resourceId, width, height, scalePercent)));
     }
 
-    private Image loadImage(String resourceId) {
+    // Returns scale of the transform of the graphics (1.0 if it isn't scaled)
+    static public double getScale(Graphics2D graphics) {
+        return Math.max(1.0, Math.abs(graphics.getTransform().getScaleX()));
+    }
+
+    // Decodes all images of the application on the decoding pool and waits for
+    // them. Returns count of images
+    static public int preloadAll() {
+        final Path directory = ResourceUtils.findResourceDirectory(IMAGE_DIRECTORY + KNOWN_IMAGE);
+        if (directory == null) {
+            return 0;
+        }
+        final List<CompletableFuture<Image>> images = new ArrayList<CompletableFuture<Image>>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.png")) {
+            for (Path file : files) {
+                // A failed image doesn't stop waiting for the others
+                images.add(getImageAsync(file.getFileName().toString()).exceptionally(exception -> null));
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        CompletableFuture.allOf(images.toArray(new CompletableFuture<?>[0])).join();
+        return images.size();
+    }
+
+    // Returns the image if it has been loaded already or null. It's the path of
+    // every drawn sprite, so it neither locks nor allocates
+    private static Image getLoaded(String imageId) {
+        final Entry entry = entries.get(imageId);
+        if (entry == null || !entry.loading.isDone() || entry.loading.isCompletedExceptionally()) {
+            return null;
+        }
+        entry.lastAccess = accessClock.incrementAndGet();
+        return entry.loading.getNow(null);
+    }
+
+    // Waits for the loading, a failed loading gives null
+    private static Image await(CompletableFuture<Image> loading) {
         try {
-            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-            InputStream input = classLoader.getResourceAsStream("img/" + resourceId);
+            return loading.join();
+        } catch (CompletionException | CancellationException exception) {
+            exception.printStackTrace();
+            return null;
+        }
+    }
+
+    // Returns the loading of the image, starts it on the executor if nobody has
+    // started it yet
+    private static CompletableFuture<Image> load(String imageId, Executor executor, Supplier<Image> producer) {
+        final Entry newEntry = new Entry();
+        final Entry entry = entries.putIfAbsent(imageId, newEntry);
+        if (entry != null) {
+            entry.lastAccess = accessClock.incrementAndGet();
+            return entry.loading;
+        }
+        newEntry.lastAccess = accessClock.incrementAndGet();
+        executor.execute(() -> {
+            Image image = null;
+            try {
+                image = producer.get();
+            } catch (RuntimeException | Error exception) {
+                // Waiting requests mustn't hang and the next request tries again
+                entries.remove(imageId, newEntry);
+                newEntry.loading.completeExceptionally(exception);
+                return;
+            }
+            if (image == null) {
+                // The next request tries again
+                entries.remove(imageId, newEntry);
+            } else {
+                newEntry.size = calcSize(image);
+                totalSize.addAndGet(newEntry.size);
+            }
+            newEntry.loading.complete(image);
+            if (image != null && totalSize.get() > MEMORY_BUDGET) {
+                evict(newEntry);
+            }
+        });
+        return newEntry.loading;
+    }
+
+    private static Image createSprite(String resourceId, int width, int height, int scalePercent) {
+        final Image image = getImage(resourceId);
+        if (image == null) {
+            return null;
+        }
+        final Image base = resample(image, width, height);
+        if (scalePercent == 100) {
+            return new BaseMultiResolutionImage(base);
+        }
+        final Image scaled = resample(image, (int) Math.ceil(width * scalePercent / 100.0),
+                (int) Math.ceil(height * scalePercent / 100.0));
+        return new BaseMultiResolutionImage(base, scaled);
+    }
+
+    // Resizes the image with bicubic interpolation. A large reduction is done in
+    // steps of a half, otherwise most of the source pixels would be skipped
+    private static BufferedImage resample(Image image, int width, int height) {
+        Image current = image;
+        int currentWidth = image.getWidth(null);
+        int currentHeight = image.getHeight(null);
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            if (currentWidth < 2 * width && currentHeight < 2 * height) {
+                currentWidth = width;
+                currentHeight = height;
+            }
+            final BufferedImage next = new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            graphics.dispose();
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+        return (BufferedImage) current;
+    }
+
+    private static Image decode(String resourceId) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        try (InputStream input = classLoader.getResourceAsStream(IMAGE_DIRECTORY + resourceId)) {
+            if (input == null) {
+                return null;
+            }
             return ImageIO.read(input);
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
+            // Waiting requests mustn't hang, so any failure gives null
             e.printStackTrace();
         }
         return null;
     }
 
-    private static ImageStorage getInstance() {
-        if (instance == null) {
-            instance = new ImageStorage();
+    // Drops the least recently used images until their total size is below the
+    // low mark of the budget, so eviction isn't repeated for every new image. The
+    // image that has just been loaded is kept. It runs on a loading thread, never
+    // on the path of a loaded image
+    private static void evict(Entry keptEntry) {
+        synchronized (evictionLock) {
+            if (totalSize.get() <= MEMORY_BUDGET) {
+                return;
+            }
+            final List<Map.Entry<String, Entry>> loaded = new ArrayList<Map.Entry<String, Entry>>();
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (candidate.getValue() != keptEntry && candidate.getValue().size > 0) {
+                    loaded.add(candidate);
+                }
+            }
+            loaded.sort(Comparator.comparingLong(candidate -> candidate.getValue().lastAccess));
+            for (Map.Entry<String, Entry> eldest : loaded) {
+                if (totalSize.get() <= MEMORY_BUDGET_LOW_MARK) {
+                    break;
+                }
+                if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                    totalSize.addAndGet(-eldest.getValue().size);
+                }
+            }
         }
-        return instance;
     }
 
-    private Map<String, Image> images = new HashMap<String, Image>();
-    static ImageStorage instance = null;
+    // Size of the image in bytes (all variants of a multi-resolution image)
+    private static long calcSize(Image image) {
+        if (image instanceof MultiResolutionImage) {
+            long size = 0;
+            for (Image variant : ((MultiResolutionImage) image).getResolutionVariants()) {
+                size += calcSize(variant);
+            }
+            return size;
+        }
+        return 4L * Math.max(0, image.getWidth(null)) * Math.max(0, image.getHeight(null));
+    }
+
+    // Loading of an image, its size and the time it has been requested last
+    private static final class Entry {
+        final CompletableFuture<Image> loading = new CompletableFuture<Image>();
+        // Stamp of accessClock, it's written without locks, so it's approximate
+        volatile long lastAccess = 0;
+        // Size in bytes, it's set once the image is loaded (0 until then)
+        volatile long size = 0;
+    }
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private static final AtomicLong accessClock = new AtomicLong();
+    private static final AtomicLong totalSize = new AtomicLong();
+    private static final Object evictionLock = new Object();
+    private static final ExecutorService decoder = Executors
+            .newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "ImageDecoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final long MEMORY_BUDGET = 64L * 1024 * 1024;
+    private static final long MEMORY_BUDGET_LOW_MARK = MEMORY_BUDGET / 4 * 3;
+    private static final String IMAGE_DIRECTORY = "img/";
+    // Any image, it's used to find the image directory
+    private static final String KNOWN_IMAGE = "app_icon.png";
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package utils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+/**
+ * The {@ResourceUtils} is a bunch of functions to work with resources
+ *
+ * @author olegshchepilov
+ *
+ */
+public class ResourceUtils {
+    // Returns directory of the resource (it may be inside of a jar file) or null
+    // if it can't be listed. The directory is found by a file in it, because
+    // there may be several directories with the same name (e.g. package of
+    // classes)
+    static public Path findResourceDirectory(String resourceId) {
+        final URL url = Thread.currentThread().getContextClassLoader().getResource(resourceId);
+        if (url == null) {
+            return null;
+        }
+        try {
+            final URI uri = url.toURI();
+            if (uri.getScheme().equals("jar")) {
+                synchronized (ResourceUtils.class) {
+                    try {
+                        FileSystems.getFileSystem(uri);
+                    } catch (FileSystemNotFoundException exception) {
+                        FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap());
+                    }
+                }
+            }
+            return Paths.get(uri).getParent();
+        } catch (URISyntaxException | IOException | IllegalArgumentException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@StartupProfiler} keeps durations of startup phases (phases may run in
+ * parallel, so it's thread-safe) and prints them when the first frame has been
+ * painted. Nothing is recorded until it has been started. Time before the
+ * application code (JVM start and class loading) and time to the first frame
+ * are taken from the JVM uptime.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class StartupProfiler {
+    // Enables profiling. It has to be called at the beginning of main(), the
+    // management classes aren't loaded if profiling isn't requested
+    public static void start() {
+        synchronized (phases) {
+            startNanos = System.nanoTime();
+            final long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            phases.add(new Phase("JVM start and class loading before main", TimeUnit.MILLISECONDS.toNanos(uptimeMillis)));
+        }
+        enabled = true;
+    }
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    // Records the phase which has started at the time (see now())
+    public static void record(String phaseName, long phaseStartNanos) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (phases) {
+            phases.add(new Phase(phaseName, System.nanoTime() - phaseStartNanos));
+        }
+    }
+
+    // Has to be called after the first frame has been painted. Only the first
+    // call has effect
+    public static void onFirstPaint() {
+        if (!enabled || firstPaintDone) {
+            return;
+        }
+        firstPaintDone = true;
+        synchronized (phases) {
+            phases.add(new Phase("Main to first frame", System.nanoTime() - startNanos));
+            phases.add(new Phase("Time to first frame (JVM uptime)",
+                    TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime())));
+            System.out.println("Startup phases:");
+            for (Phase phase : phases) {
+                System.out.printf("  %-45s %8.1f ms%n", phase.name, phase.durationNanos / 1e6);
+            }
+            System.out.println("  Loaded classes: " + ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+        }
+    }
+
+    private static class Phase {
+        Phase(String name, long durationNanos) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+        }
+
+        final String name;
+        final long durationNanos;
+    }
+
+    private static final List<Phase> phases = new ArrayList<Phase>();
+    // They're checked on every paint, so they're read without the lock
+    private static volatile boolean enabled = false;
+    private static volatile boolean firstPaintDone = false;
+    private static long startNanos = 0;
+}
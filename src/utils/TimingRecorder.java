@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2022 The Java Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * The {@TimingRecorder} keeps the last N durations (in nanoseconds) in a ring
+ * buffer. Recording is just an array store, statistics are calculated on
+ * demand. It isn't thread-safe: a recorder has to be used by one thread.
+ *
+ * @author olegshchepilov
+ *
+ */
+
+public class TimingRecorder {
+    public TimingRecorder(int capacity) {
+        samples = new long[capacity];
+        sortBuffer = new long[capacity];
+    }
+
+    public void record(long durationNanos) {
+        samples[next] = durationNanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return samples.length;
+    }
+
+    public long getLast() {
+        return getRecent(0);
+    }
+
+    // Returns sample by its age: 0 is the last recorded sample
+    public long getRecent(int age) {
+        if (age < 0 || age >= count) {
+            return 0;
+        }
+        return samples[(next - 1 - age + samples.length) % samples.length];
+    }
+
+    // Returns percentile (0..100) of the recorded samples
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(samples, 0, sortBuffer, 0, count);
+        Arrays.sort(sortBuffer, 0, count);
+        final int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sortBuffer[Math.min(count - 1, Math.max(0, index))];
+    }
+
+    public void clear() {
+        next = 0;
+        count = 0;
+    }
+
+    private final long[] samples;
+    private final long[] sortBuffer;
+    private int next = 0;
+    private int count = 0;
+}